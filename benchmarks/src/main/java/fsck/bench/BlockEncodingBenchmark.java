@@ -0,0 +1,79 @@
+package fsck.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsck.BinaryBlock;
+import fsck.BlockTokenizer;
+import fsck.InodeRecord;
+import fsck.IntList;
+
+/*
+ * Class Name: BlockEncodingBenchmark
+ * Description: Decoding of a full free block list block of 400 block numbers and of a file inode, in the text and the binary encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockEncodingBenchmark {
+
+	@Param({ "text", "binary" })
+	public String encoding;
+
+	private ByteBuffer freeList;
+	private ByteBuffer inode;
+	private final IntList blockNumbers = new IntList(512);
+	private final InodeRecord record = new InodeRecord();
+
+	@Setup
+	public void setUp()
+	{
+		StringBuilder list = new StringBuilder();
+		for (int b = 0; b < 400; b++)
+		{
+			list.append(b > 0 ? ", " : "").append(9600 + b);
+		}
+		freeList = encode(list.toString(), true);
+		inode = encode("{size:14500, uid:1, gid:1, mode:33261, linkcount:1, atime:1323630836, ctime:1323630836, mtime:1323630836, indirect:1 location:28}", false);
+	}
+
+	private ByteBuffer encode(String text, boolean isList)
+	{
+		ByteBuffer block = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+		if (encoding.equals("binary"))
+		{
+			block = ByteBuffer.wrap(isList ? BinaryBlock.encodeList(block) : BinaryBlock.encodeRecord(block));
+		}
+		return block.asReadOnlyBuffer();
+	}
+
+	@Benchmark
+	public IntList freeList()
+	{
+		blockNumbers.clear();
+		BlockTokenizer.parseBlockList(freeList, blockNumbers);
+		return blockNumbers;
+	}
+
+	@Benchmark
+	public InodeRecord inode()
+	{
+		return record.parse(inode);
+	}
+}
@@ -0,0 +1,83 @@
+package fsck.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+import fsck.BlockStore;
+import fsck.Findings;
+import fsck.FsckSession;
+import fsck.InodeGraph;
+import fsck.Superblock;
+import fsck.TextReportSink;
+
+/*
+ * Class Name: CheckerBridge
+ * Description: Access of the benchmarks to the checks of csefsck through an FsckSession opened on the image, with the link map
+ *              of the image set as a walk of the session would set it.
+ *              The checks are only detected, their findings are never applied, so a benchmark never changes the image.
+ */
+final class CheckerBridge {
+
+	//Cache large enough for the whole 1M block image, so that every benchmark measures the checks and not the disk
+	private static final long CACHE_CAPACITY = 1L << 30;
+
+	private final FsckSession session;
+
+	final BlockStore blockStore;
+	final Superblock superblock;
+	final InodeGraph linkMap;
+
+	CheckerBridge(Path image, int threads) throws IOException
+	{
+		session = new FsckSession(image, new TextReportSink(OutputStream.nullOutputStream()));
+		session.threads = threads;
+		session.blockCacheCapacity = CACHE_CAPACITY;
+		session.open();
+		blockStore = session.getBlockStore();
+		superblock = session.readSuperblock();
+
+		//Link map of the image, used by the checks, and the directory list derived from it
+		linkMap = walk();
+		linkMap.freeze(superblock.maxBlocks);
+		session.setLinkMap(linkMap);
+	}
+
+	/*
+	 * Method to walk the directory tree of the image into a new link map
+	 */
+	InodeGraph walk()
+	{
+		InodeGraph graph = new InodeGraph();
+		session.directoryLinkMap(superblock.root, graph, new Findings());
+		return graph;
+	}
+
+	Findings checkFreeBlockList()
+	{
+		Findings findings = new Findings();
+		session.checkFreeBlockList(linkMap, superblock.maxBlocks, superblock.freeStart, superblock.freeEnd, superblock.root, findings);
+		return findings;
+	}
+
+	Findings checkCurrentParentDirectory()
+	{
+		Findings findings = new Findings();
+		session.checkCurrentParentDirectory(linkMap, findings);
+		return findings;
+	}
+
+	Findings checkLinkCount()
+	{
+		Findings findings = new Findings();
+		session.checkLinkCount(linkMap, findings);
+		return findings;
+	}
+
+	Findings checkFileSize()
+	{
+		Findings findings = new Findings();
+		session.checkFileSize(linkMap, findings);
+		return findings;
+	}
+}
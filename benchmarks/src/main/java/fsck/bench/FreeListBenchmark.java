@@ -0,0 +1,32 @@
+package fsck.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsck.Findings;
+
+/*
+ * Class Name: FreeListBenchmark
+ * Description: checkFreeBlockList - reconciliation of the free block list with the link map of a consistent image.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class FreeListBenchmark {
+
+	@Benchmark
+	public Findings checkFreeBlockList(ImageState image, ImageState.Throughput throughput)
+	{
+		throughput.blocks += image.blocks;
+		return image.checker.checkFreeBlockList();
+	}
+}
@@ -0,0 +1,89 @@
+package fsck.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsck.BlockTokenizer;
+import fsck.IntList;
+
+/*
+ * Class Name: FreeListParseBenchmark
+ * Description: Parsing of a full free block list block of 400 block numbers into the bitmap of the listed free blocks -
+ *              split and parseInt on the decoded text as the checker used to, parseBlockList followed by the marking of the list,
+ *              and markBlockList, which uses the Vector API as the fork is started with the incubator module.
+ *              Run with -jvmArgsAppend -Dfsck.scalar=true for the scalar markBlockList.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules=jdk.incubator.vector" })
+public class FreeListParseBenchmark {
+
+	private static final int MAX_BLOCKS = 10000;
+
+	private final ByteBuffer block;
+	private final IntList blockNumbers = new IntList(512);
+	private final BitSet listedFree = new BitSet(MAX_BLOCKS);
+
+	public FreeListParseBenchmark()
+	{
+		StringBuilder text = new StringBuilder();
+		for (int b = 0; b < 400; b++)
+		{
+			text.append(b > 0 ? ", " : "").append(9600 + b);
+		}
+		block = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+	}
+
+	@Benchmark
+	public BitSet split()
+	{
+		byte[] bytes = new byte[block.remaining()];
+		block.duplicate().get(bytes);
+		for (String item : new String(bytes, StandardCharsets.ISO_8859_1).split(","))
+		{
+			int number = Integer.parseInt(item.trim());
+			if (number < MAX_BLOCKS)
+			{
+				listedFree.set(number);
+			}
+		}
+		return listedFree;
+	}
+
+	@Benchmark
+	public BitSet parseBlockList()
+	{
+		blockNumbers.clear();
+		BlockTokenizer.parseBlockList(block, blockNumbers);
+		for (int k = 0; k < blockNumbers.size(); k++)
+		{
+			if (blockNumbers.get(k) < MAX_BLOCKS)
+			{
+				listedFree.set(blockNumbers.get(k));
+			}
+		}
+		return listedFree;
+	}
+
+	@Benchmark
+	public BitSet markBlockList()
+	{
+		BlockTokenizer.markBlockList(block, listedFree, MAX_BLOCKS);
+		return listedFree;
+	}
+}
@@ -0,0 +1,50 @@
+package fsck.bench;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Class Name: ImageState
+ * Description: Synthetic image shared by the benchmarks of a fork, with the checker set up on it and the link map built.
+ *              The size of the image is the blocks parameter, 1k, 100k and 1M blocks by default.
+ */
+@State(Scope.Benchmark)
+public class ImageState {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int blocks;
+
+	//Number of threads of the directory walk
+	@Param({ "1" })
+	public int threads;
+
+	CheckerBridge checker;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		checker = new CheckerBridge(SyntheticImage.get(blocks), threads);
+	}
+
+	/*
+	 * Secondary result counting the blocks of the image processed by each invocation, reported by JMH as blocks per second
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Throughput
+	{
+		public long blocks;
+
+		@Setup(Level.Iteration)
+		public void reset()
+		{
+			blocks = 0;
+		}
+	}
+}
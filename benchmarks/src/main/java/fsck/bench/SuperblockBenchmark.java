@@ -0,0 +1,40 @@
+package fsck.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fsck.Superblock;
+
+/*
+ * Class Name: SuperblockBenchmark
+ * Description: Parsing of the super block as done at the start of main, on the super block of the sample image.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuperblockBenchmark {
+
+	private final ByteBuffer block = ByteBuffer.wrap("{creationTime: 1429434844, mounted: 5, devId:20, freeStart:1, freeEnd:25, root:26, maxBlocks:10000}"
+			.getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+	private final Superblock superblock = new Superblock();
+
+	@Benchmark
+	public Superblock parse()
+	{
+		return superblock.parse(block);
+	}
+}
@@ -0,0 +1,51 @@
+package fsck.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import fsck.ImageGenerator;
+
+/*
+ * Class Name: SyntheticImage
+ * Description: Consistent file system images of a given number of blocks for the benchmarks, written by the ImageGenerator.
+ *              Directories of 100 files and 4 sub directories each, every file stored through an index block in two data blocks,
+ *              about three quarters of the blocks in use. The indirect files keep the image free of errors, so the benchmarks measure
+ *              the checks rather than the reporting.
+ *              An image is generated once into its own directory and reused by the later runs, a marker file tells that it is complete.
+ */
+public final class SyntheticImage {
+
+	//Name of the file written once the image is complete
+	private static final String COMPLETE_MARKER = ".complete";
+
+	private SyntheticImage()
+	{
+	}
+
+	/*
+	 * Method to get the directory of an image, generating the image if it does not exist yet
+	 * Accepts the number of blocks of the image, returns the directory holding the fusedata.N blocks
+	 */
+	public static Path get(int maxBlocks) throws IOException
+	{
+		Path base = Paths.get(System.getProperty("fsck.bench.images", Paths.get(System.getProperty("java.io.tmpdir"), "fsck-bench").toString()));
+		Path directory = base.resolve(Integer.toString(maxBlocks));
+		if (!Files.exists(directory.resolve(COMPLETE_MARKER)))
+		{
+			ImageGenerator generator = new ImageGenerator(4096);
+			generator.maxBlocks = maxBlocks;
+			generator.fill = 0.75;
+			generator.depth = Integer.MAX_VALUE;
+			generator.fanout = 4;
+			generator.filesPerDirectory = 100;
+			generator.minFileSize = 4097;
+			generator.maxFileSize = 8192;
+			generator.indirectRatio = 1;
+			generator.generate(directory);
+			Files.createFile(directory.resolve(COMPLETE_MARKER));
+		}
+		return directory;
+	}
+}
@@ -0,0 +1,89 @@
+package fsck;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Class Name: FreeListCheckTest
+ * Description: Tests of the repair of the free block list of an image whose free block list does not start at block 1 - the super block,
+ *              an unused block 1, the free block list in blocks 2 and 3 and the root directory in block 4, with block 450 missing from the
+ *              list. The block number is to be added to the free block list block the check expects it in, so a second run finds nothing.
+ */
+public class FreeListCheckTest {
+
+	@TempDir
+	Path imageDirectory;
+
+	@BeforeEach
+	public void createImage() throws IOException
+	{
+		write(0, "{creationTime: 1429434844, mounted: 5, devId:20, freeStart:2, freeEnd:3, root:4, maxBlocks:800}");
+		write(1, "");
+		write(2, list(IntStream.concat(IntStream.of(1), IntStream.range(5, 400))));
+		write(3, list(IntStream.range(400, 800).filter(b -> b != 450)));
+		write(4, "{size:4096, uid:1000, gid:1000, mode:16877, atime:1323630836, ctime:1323630836, mtime:1323630836, linkcount:2, "
+				+ "filename_to_inode_dict: {d:.:4, d:..:4}}");
+	}
+
+	@Test
+	public void missingBlockIsAddedToItsOwnBlock() throws IOException
+	{
+		assertEquals(1, check(false));
+		assertTrue(read(3).endsWith(", 450"));
+		assertEquals(0, check(false));
+	}
+
+	@Test
+	public void missingBlockIsAddedToItsOwnBlockWhenStreaming() throws IOException
+	{
+		assertEquals(1, check(true));
+		assertTrue(read(3).endsWith(", 450"));
+		assertEquals(0, check(true));
+	}
+
+	/*
+	 * Method to check and repair the image once, returns the number of errors found
+	 */
+	private int check(boolean streaming) throws IOException
+	{
+		ReportSink report = new TextReportSink(new ByteArrayOutputStream());
+		FsckSession session = new FsckSession(imageDirectory, report);
+		session.threads = 1;
+		session.streaming = streaming;
+		try
+		{
+			return session.run();
+		}
+		finally
+		{
+			report.close();
+		}
+	}
+
+	private void write(int blockNumber, String content) throws IOException
+	{
+		Files.write(imageDirectory.resolve("fusedata." + blockNumber), content.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	private String read(int blockNumber) throws IOException
+	{
+		return new String(Files.readAllBytes(imageDirectory.resolve("fusedata." + blockNumber)), StandardCharsets.ISO_8859_1);
+	}
+
+	private static String list(IntStream blocks)
+	{
+		return blocks.mapToObj(Integer::toString).collect(Collectors.joining(", "));
+	}
+}
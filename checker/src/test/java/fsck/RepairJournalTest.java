@@ -0,0 +1,135 @@
+package fsck;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/*
+ * Class Name: RepairJournalTest
+ * Description: Tests of the replay of a journal left behind by a run which stopped half way, on an image of three block files in a
+ *              temporary directory. A complete journal is replayed and deleted, a torn one is deleted without touching any block.
+ */
+public class RepairJournalTest {
+
+	//Identifier at the start of a journal file, as written by RepairJournal
+	private static final int MAGIC = 0x46534A31;
+
+	@TempDir
+	Path imageDirectory;
+
+	//Variables to store the block store of the image and the path of its journal
+	private BlockStore blockStore;
+	private Path journal;
+
+	@BeforeEach
+	public void createImage() throws IOException
+	{
+		for (int b = 0; b < 3; b++)
+		{
+			Files.write(imageDirectory.resolve("fusedata." + b), text("old " + b));
+		}
+		blockStore = new BlockStore(imageDirectory, "fusedata", 4096, 0);
+		journal = imageDirectory.resolve("fusedata.journal");
+	}
+
+	@Test
+	public void noJournal() throws IOException
+	{
+		assertEquals(0, RepairJournal.replay(blockStore, journal));
+		assertBlocks("old 0", "old 1", "old 2");
+	}
+
+	@Test
+	public void completeJournal() throws IOException
+	{
+		Files.write(journal, journal(2, new int[] { 1, 2 }, "new 1", "new 2"));
+		assertEquals(2, RepairJournal.replay(blockStore, journal));
+		assertBlocks("old 0", "new 1", "new 2");
+		assertFalse(Files.exists(journal));
+	}
+
+	@Test
+	public void tornJournal() throws IOException
+	{
+		byte[] complete = journal(2, new int[] { 1, 2 }, "new 1", "new 2");
+		Files.write(journal, Arrays.copyOf(complete, complete.length - 12));
+		assertDiscarded();
+	}
+
+	@Test
+	public void badChecksum() throws IOException
+	{
+		byte[] complete = journal(2, new int[] { 1, 2 }, "new 1", "new 2");
+		complete[complete.length - 1] ^= 1;
+		Files.write(journal, complete);
+		assertDiscarded();
+	}
+
+	@Test
+	public void truncatedRecord() throws IOException
+	{
+		//The header announces a second record, the checksum follows the first one and is itself valid
+		Files.write(journal, journal(2, new int[] { 1 }, "new 1"));
+		assertDiscarded();
+	}
+
+	/*
+	 * Method to check that the journal is reported torn, deleted and that no block was rewritten
+	 */
+	private void assertDiscarded() throws IOException
+	{
+		assertEquals(-1, RepairJournal.replay(blockStore, journal));
+		assertBlocks("old 0", "old 1", "old 2");
+		assertFalse(Files.exists(journal));
+	}
+
+	private void assertBlocks(String... contents) throws IOException
+	{
+		for (int b = 0; b < contents.length; b++)
+		{
+			assertEquals(contents[b], new String(Files.readAllBytes(imageDirectory.resolve("fusedata." + b)), StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	/*
+	 * Method to build a journal file in the format of RepairJournal
+	 * Accepts the number of records of the header, the block numbers of the records written and their contents
+	 */
+	private static byte[] journal(int count, int[] blockNumbers, String... contents)
+	{
+		int size = 8;
+		for (String content : contents)
+		{
+			size += 8 + content.length();
+		}
+		ByteBuffer journal = ByteBuffer.allocate(size + 8);
+		journal.putInt(MAGIC);
+		journal.putInt(count);
+		for (int i = 0; i < blockNumbers.length; i++)
+		{
+			journal.putInt(blockNumbers[i]);
+			journal.putInt(contents[i].length());
+			journal.put(text(contents[i]));
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(journal.array(), 0, size);
+		journal.putLong(checksum.getValue());
+		return journal.array();
+	}
+
+	private static byte[] text(String content)
+	{
+		return content.getBytes(StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,571 @@
+package fsck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+/*
+ * Class Name: BinaryBlock
+ * Description: Optional binary encoding of the blocks csefsck parses - the super block, the directory and file inodes, the free block list
+ *              and the index blocks. A binary block starts with a NUL byte, which no text block starts with, so the two encodings can be
+ *              mixed in one image and every block is decoded by what it holds. The BlockTokenizer decodes a binary block in place through
+ *              the same Handler calls as the text, the keys are reported from a table of the key names and the entry names from the block.
+ *              Formats
+ *              a. Block list: NUL, 'L', varint count, the block numbers as zigzag varints of the difference to the previous number.
+ *                 A sorted free block list takes one or two bytes per block instead of up to ten, so far more numbers fit in a block.
+ *              b. Record: NUL, 'R', varint count of attributes, each attribute in a fixed slot of a key byte and an 8 byte big endian value,
+ *                 a key byte for filename_to_inode_dict (0 if there is none), varint count of entries, each entry as the type byte,
+ *                 varint name length, the name bytes and a varint block number.
+ *                 The low 6 bits of a key byte are the index of the key in KEYS, bit 6 is set when the key is preceded by a space instead
+ *                 of ", " and bit 7 when a space follows the colon, so the text of the block is given back byte for byte.
+ *              encode only encodes a block whose text is given back unchanged by toText, any other block is kept as text.
+ *              The repairs work on the text, RepairJournal gives them the text of a binary block and a repaired block is written back as text.
+ *              Usage: java -cp csefsck.jar fsck.BinaryBlock encode|decode SOURCE TARGET, see main
+ */
+public final class BinaryBlock {
+
+	//First byte of every binary block and the kinds of binary block
+	private static final byte MARKER = 0;
+	private static final byte LIST = 'L';
+	private static final byte RECORD = 'R';
+	//Key byte flags
+	private static final int SPACE_SEPARATED = 0x40;
+	private static final int SPACE_AFTER_COLON = 0x80;
+	private static final int KEY_MASK = 0x3F;
+	//Size of the slot of an attribute
+	private static final int ATTRIBUTE_SLOT = 9;
+
+	//Keys which can be encoded, the index of a key is its identifier. The last one is the nested dictionary of the directories
+	private static final String[] KEYS = { "creationTime", "mounted", "devId", "freeStart", "freeEnd", "root", "maxBlocks",
+			"size", "uid", "gid", "mode", "atime", "ctime", "mtime", "linkcount", "indirect", "location", "filename_to_inode_dict" };
+	private static final int DICTIONARY = KEYS.length - 1;
+	//Names of all the keys one after the other, the keys are reported to the handlers as ranges of it
+	private static final ByteBuffer KEY_TEXT;
+	private static final int[] KEY_START = new int[KEYS.length];
+	private static final int[] KEY_END = new int[KEYS.length];
+
+	static
+	{
+		StringBuilder text = new StringBuilder();
+		for (int k = 0; k < KEYS.length; k++)
+		{
+			KEY_START[k] = text.length();
+			text.append(KEYS[k]);
+			KEY_END[k] = text.length();
+		}
+		KEY_TEXT = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+	}
+
+	private BinaryBlock()
+	{
+	}
+
+	/*
+	 * Method to tell whether a block is binary encoded
+	 */
+	public static boolean isBinary(ByteBuffer block)
+	{
+		return block.remaining() >= 2 && block.get(block.position()) == MARKER;
+	}
+
+	/*
+	 * Method to tell whether a block is a binary encoded record, i.e. a directory or file inode
+	 */
+	public static boolean isRecord(ByteBuffer block)
+	{
+		return isBinary(block) && block.get(block.position() + 1) == RECORD;
+	}
+
+	/*
+	 * Method to decode a binary record for the BlockTokenizer, the attributes and the entries are reported to the handler in the order of the text
+	 * Accepts the block, which must be binary encoded, and the handler
+	 */
+	static void tokenize(ByteBuffer block, BlockTokenizer.Handler handler)
+	{
+		int limit = block.limit();
+		if (block.get(block.position() + 1) != RECORD)
+		{
+			return;
+		}
+		int[] cursor = { block.position() + 2 };
+		long attributes = readVarint(block, cursor) & 0xFFFFFFFFL;
+		int i = cursor[0];
+		if (i > limit || i + attributes * ATTRIBUTE_SLOT >= limit)
+		{
+			return;
+		}
+		for (int a = 0; a < attributes; a++, i += ATTRIBUTE_SLOT)
+		{
+			int key = block.get(i) & KEY_MASK;
+			if (key >= DICTIONARY)
+			{
+				return;
+			}
+			handler.attribute(KEY_TEXT, KEY_START[key], KEY_END[key], block.getLong(i + 1));
+		}
+		cursor[0] = i + 1;
+		int entries = readVarint(block, cursor);
+		for (int e = 0; e < entries && cursor[0] < limit; e++)
+		{
+			byte type = block.get(cursor[0]++);
+			int nameLength = readVarint(block, cursor);
+			int nameStart = cursor[0];
+			cursor[0] += nameLength;
+			int entryBlock = readVarint(block, cursor);
+			if (nameLength < 0 || cursor[0] > limit || entryBlock < 0)
+			{
+				return;
+			}
+			handler.entry(type, block, nameStart, nameStart + nameLength, entryBlock);
+		}
+	}
+
+	/*
+	 * Method to decode a binary block list for the BlockTokenizer
+	 * Accepts the block, which must be binary encoded, and the list to which the block numbers are appended
+	 * Returns false if the block is not a block list or holds a number which is not a non negative integer
+	 */
+	static boolean parseList(ByteBuffer block, IntList blockNumbers)
+	{
+		if (block.get(block.position() + 1) != LIST)
+		{
+			return false;
+		}
+		int[] cursor = { block.position() + 2 };
+		int count = readVarint(block, cursor);
+		long value = 0;
+		for (int k = 0; k < count; k++)
+		{
+			long difference = readVarint(block, cursor) & 0xFFFFFFFFL;
+			value += (difference >>> 1) ^ -(difference & 1);
+			if (value < 0 || value > Integer.MAX_VALUE || cursor[0] > block.limit())
+			{
+				return false;
+			}
+			blockNumbers.add((int) value);
+		}
+		return cursor[0] <= block.limit();
+	}
+
+	/*
+	 * Method to give back the text of a block, the text of a binary block and any other block as it is
+	 */
+	public static ByteBuffer toText(ByteBuffer block)
+	{
+		if (!isBinary(block) || (block.get(block.position() + 1) != LIST && block.get(block.position() + 1) != RECORD))
+		{
+			return block;
+		}
+		try
+		{
+			return decode(block);
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			//Not a well formed binary block, e.g. a data block starting with a NUL byte, it is left as it is
+			return block;
+		}
+	}
+
+	private static ByteBuffer decode(ByteBuffer block)
+	{
+		StringBuilder text = new StringBuilder(block.remaining() * 2);
+		if (block.get(block.position() + 1) == LIST)
+		{
+			IntList blockNumbers = new IntList(512);
+			parseList(block, blockNumbers);
+			for (int k = 0; k < blockNumbers.size(); k++)
+			{
+				text.append(k > 0 ? ", " : "").append(blockNumbers.get(k));
+			}
+		}
+		else
+		{
+			int[] cursor = { block.position() + 2 };
+			int attributes = readVarint(block, cursor);
+			int i = cursor[0];
+			text.append('{');
+			for (int a = 0; a < attributes; a++, i += ATTRIBUTE_SLOT)
+			{
+				appendKey(text, block.get(i), a == 0);
+				text.append(block.getLong(i + 1));
+			}
+			byte dictionary = block.get(i);
+			cursor[0] = i + 1;
+			int entries = readVarint(block, cursor);
+			if (dictionary != 0)
+			{
+				appendKey(text, dictionary, attributes == 0);
+				text.append('{');
+				for (int e = 0; e < entries; e++)
+				{
+					text.append(e > 0 ? ", " : "").append((char) block.get(cursor[0]++)).append(':');
+					int nameLength = readVarint(block, cursor);
+					for (int n = 0; n < nameLength; n++)
+					{
+						text.append((char) (block.get(cursor[0]++) & 0xFF));
+					}
+					text.append(':').append(readVarint(block, cursor) & 0xFFFFFFFFL);
+				}
+				text.append('}');
+			}
+			text.append('}');
+		}
+		return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer();
+	}
+
+	/*
+	 * Method to encode a block list, as stored in the free block list and the index blocks
+	 * Accepts the text of the block, returns the binary block or null if the text is not given back unchanged by toText
+	 */
+	public static byte[] encodeList(ByteBuffer text)
+	{
+		IntList blockNumbers = new IntList(512);
+		if (isBinary(text) || !BlockTokenizer.parseBlockList(text, blockNumbers))
+		{
+			return null;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(blockNumbers.size() * 2 + 8);
+		out.write(MARKER);
+		out.write(LIST);
+		writeVarint(out, blockNumbers.size());
+		long previous = 0;
+		for (int k = 0; k < blockNumbers.size(); k++)
+		{
+			long difference = blockNumbers.get(k) - previous;
+			writeVarint(out, (int) ((difference << 1) ^ (difference >> 63)));
+			previous = blockNumbers.get(k);
+		}
+		return roundTrip(text, out.toByteArray());
+	}
+
+	/*
+	 * Method to encode a key value block - the super block, a directory inode or a file inode
+	 * Accepts the text of the block, returns the binary block or null if the text is not given back unchanged by toText
+	 */
+	public static byte[] encodeRecord(ByteBuffer text)
+	{
+		if (isBinary(text))
+		{
+			return null;
+		}
+		ByteArrayOutputStream attributes = new ByteArrayOutputStream(128);
+		ByteArrayOutputStream entries = new ByteArrayOutputStream(256);
+		int[] counts = new int[2];
+		boolean[] encodable = { true };
+		BlockTokenizer.tokenize(text, new BlockTokenizer.Handler() {
+			public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+			{
+				int key = keyIndex(text, keyStart, keyEnd);
+				if (key < 0 || key == DICTIONARY)
+				{
+					encodable[0] = false;
+					return;
+				}
+				attributes.write(keyByte(text, key, keyStart, keyEnd));
+				for (int shift = 56; shift >= 0; shift -= 8)
+				{
+					attributes.write((int) (value >>> shift));
+				}
+				counts[0]++;
+			}
+
+			public void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int block)
+			{
+				entries.write(type);
+				writeVarint(entries, nameEnd - nameStart);
+				for (int n = nameStart; n < nameEnd; n++)
+				{
+					entries.write(text.get(n));
+				}
+				writeVarint(entries, block);
+				counts[1]++;
+			}
+		});
+		if (!encodable[0])
+		{
+			return null;
+		}
+
+		//The key of the nested dictionary is not reported by the tokenizer, it is looked up in the text
+		int dictionary = 0;
+		int dictionaryStart = indexOf(text, KEYS[DICTIONARY] + ":");
+		if (dictionaryStart >= 0)
+		{
+			dictionary = keyByte(text, DICTIONARY, dictionaryStart, dictionaryStart + KEYS[DICTIONARY].length());
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(attributes.size() + entries.size() + 8);
+		out.write(MARKER);
+		out.write(RECORD);
+		writeVarint(out, counts[0]);
+		out.write(attributes.toByteArray(), 0, attributes.size());
+		out.write(dictionary);
+		writeVarint(out, counts[1]);
+		out.write(entries.toByteArray(), 0, entries.size());
+		return roundTrip(text, out.toByteArray());
+	}
+
+	/*
+	 * Method to keep an encoded block only if its text is the original text
+	 */
+	private static byte[] roundTrip(ByteBuffer text, byte[] encoded)
+	{
+		return toText(ByteBuffer.wrap(encoded)).equals(text) ? encoded : null;
+	}
+
+	/*
+	 * Method to get the key byte of a key found at keyStart - its index and whether it is preceded by a space and followed by one
+	 */
+	private static int keyByte(ByteBuffer text, int key, int keyStart, int keyEnd)
+	{
+		int flags = 0;
+		if (keyStart > text.position() && text.get(keyStart - 1) == ' ' && (keyStart - 1 == text.position() || text.get(keyStart - 2) != ','))
+		{
+			flags |= SPACE_SEPARATED;
+		}
+		if (keyEnd + 1 < text.limit() && text.get(keyEnd + 1) == ' ')
+		{
+			flags |= SPACE_AFTER_COLON;
+		}
+		return key | flags;
+	}
+
+	private static void appendKey(StringBuilder text, byte keyByte, boolean first)
+	{
+		if (!first)
+		{
+			text.append((keyByte & SPACE_SEPARATED) != 0 ? " " : ", ");
+		}
+		text.append(KEYS[keyByte & KEY_MASK]).append(':');
+		if ((keyByte & SPACE_AFTER_COLON) != 0)
+		{
+			text.append(' ');
+		}
+	}
+
+	private static int keyIndex(ByteBuffer text, int keyStart, int keyEnd)
+	{
+		for (int k = 0; k < KEYS.length; k++)
+		{
+			if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, KEYS[k]))
+			{
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(ByteBuffer text, String key)
+	{
+		for (int i = text.position(); i + key.length() <= text.limit(); i++)
+		{
+			if (BlockTokenizer.keyEquals(text, i, i + key.length(), key))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Method to read an unsigned varint, 7 bits per byte with the high bit set on all the bytes but the last
+	 * Accepts the block and the position to read at, which is moved past the varint
+	 */
+	private static int readVarint(ByteBuffer block, int[] cursor)
+	{
+		int i = cursor[0];
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			if (i >= block.limit())
+			{
+				//Truncated block, the position is left past the limit for the caller to see
+				cursor[0] = block.limit() + 1;
+				return 0;
+			}
+			b = block.get(i++);
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while (b < 0 && shift < 35);
+		cursor[0] = i;
+		return value;
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, int value)
+	{
+		while ((value & ~0x7F) != 0)
+		{
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/*
+	 * Method to convert the blocks of an image directory to the binary encoding, or back to text, into another directory
+	 * When encoding, the super block, the free block list, the inodes of the directories and the files reached from the root and the index
+	 * blocks of the files with indirect:1 are encoded, the data blocks are copied as they are as their content is not known
+	 * Accepts the source and target directories, the block file name prefix and whether to encode or decode
+	 * Returns the number of blocks converted
+	 */
+	public static int convert(Path source, Path target, String basicFileName, boolean encode) throws IOException
+	{
+		Files.createDirectories(target);
+		BitSet lists = new BitSet();
+		BitSet records = new BitSet();
+		if (encode)
+		{
+			findBlocks(source, basicFileName, records, lists);
+		}
+
+		int converted = 0;
+		String prefix = basicFileName + ".";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(source, prefix + "*"))
+		{
+			for (Path file : files)
+			{
+				String suffix = file.getFileName().toString().substring(prefix.length());
+				if (suffix.isEmpty() || !suffix.chars().allMatch(Character::isDigit) || suffix.length() > 9)
+				{
+					continue;
+				}
+				int block = Integer.parseInt(suffix);
+				byte[] content = Files.readAllBytes(file);
+				byte[] result = null;
+				if (!encode)
+				{
+					result = isBinary(ByteBuffer.wrap(content)) ? bytes(toText(ByteBuffer.wrap(content))) : null;
+				}
+				else if (records.get(block))
+				{
+					result = encodeRecord(ByteBuffer.wrap(content));
+				}
+				else if (lists.get(block))
+				{
+					result = encodeList(ByteBuffer.wrap(content));
+				}
+				if (result != null)
+				{
+					converted++;
+				}
+				Files.write(target.resolve(file.getFileName().toString()), result != null ? result : content);
+			}
+		}
+		return converted;
+	}
+
+	/*
+	 * Method to find the blocks to encode by walking the image from the super block
+	 * Accepts the image directory, the block file name prefix and the bitmaps to fill with the key value blocks and the block lists
+	 */
+	private static void findBlocks(Path imageDirectory, String basicFileName, BitSet records, BitSet lists) throws IOException
+	{
+		BlockStore blockStore = new BlockStore(imageDirectory, basicFileName, 4096, 64L * 1024 * 1024);
+		Superblock superblock = new Superblock().parse(blockStore.readBlock(0));
+		records.set(0);
+		for (int b = superblock.freeStart; b <= superblock.freeEnd && b >= 0; b++)
+		{
+			lists.set(b);
+		}
+
+		ArrayDeque<Integer> directories = new ArrayDeque<Integer>();
+		directories.add(superblock.root);
+		InodeRecord inode = new InodeRecord();
+		IntList blockNumbers = new IntList(512);
+		while (!directories.isEmpty())
+		{
+			int directory = directories.poll();
+			if (directory < 0 || records.get(directory))
+			{
+				continue;
+			}
+			records.set(directory);
+			ByteBuffer text;
+			try
+			{
+				text = blockStore.readBlock(directory);
+			}
+			catch (IOException e)
+			{
+				continue;
+			}
+			IntList files = new IntList(16);
+			BlockTokenizer.tokenize(text, new BlockTokenizer.Handler() {
+				public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+				{
+				}
+
+				public void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int block)
+				{
+					if (type == InodeGraph.TYPE_DIRECTORY)
+					{
+						directories.add(block);
+					}
+					else
+					{
+						files.add(block);
+					}
+				}
+			});
+			for (int f = 0; f < files.size(); f++)
+			{
+				int file = files.get(f);
+				try
+				{
+					inode.parse(blockStore.readBlock(file));
+					records.set(file);
+					blockNumbers.clear();
+					if (inode.hasIndirect && inode.indirect == 1 && inode.hasLocation
+							&& BlockTokenizer.parseBlockList(blockStore.readBlock((int) inode.location), blockNumbers))
+					{
+						lists.set((int) inode.location);
+					}
+				}
+				catch (IOException e)
+				{
+					//A block which cannot be read is copied as it is
+				}
+			}
+		}
+	}
+
+	private static byte[] bytes(ByteBuffer block)
+	{
+		byte[] bytes = new byte[block.remaining()];
+		block.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/*
+	 * Converter between the text and the binary encoding, both take image directories with a file per block
+	 * encode SOURCE TARGET    writes the blocks of SOURCE to TARGET, binary encoded where possible
+	 * decode SOURCE TARGET    writes the blocks of SOURCE to TARGET, all as text
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3 || (!args[0].equals("encode") && !args[0].equals("decode")))
+		{
+			System.out.println("Error: Usage: java fsck.BinaryBlock encode|decode SOURCE TARGET");
+			return;
+		}
+		Path source = Paths.get(args[1]);
+		Path target = Paths.get(args[2]);
+		if (Files.exists(target.resolve("fusedata.0")))
+		{
+			System.out.println("Error: " + target + " already holds a file system image");
+			return;
+		}
+		int blocks = convert(source, target, "fusedata", args[0].equals("encode"));
+		System.out.println("INFO: " + blocks + " blocks of " + source + (args[0].equals("encode") ? " encoded" : " decoded") + " into " + target);
+	}
+}
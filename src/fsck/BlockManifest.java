@@ -0,0 +1,454 @@
+package fsck;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * Class Name: BlockManifest
+ * Description: State of the blocks of a file system image at the end of a clean run - for every block file its modification time,
+ *              size and CRC32 - together with the link map of the run, for the incremental check of the next run.
+ *              The next run compares the block files with the manifest. A block whose modification time and size are unchanged is taken as
+ *              unchanged without reading it, unless it was modified less than RACY_MILLIS before the manifest was taken, as a later change
+ *              could then have kept the same time. Any other block is read and its CRC32 tells whether it changed.
+ *              The changed blocks are traced back through the earlier link map to the directories holding them, only those directories
+ *              are read again by the walk. Saved as magic, version, capture time, super block fields, the blocks, the name table and the links
+ *              of the link map, and a CRC32 of all of it. The file is replaced atomically, a damaged or foreign manifest is ignored.
+ */
+public class BlockManifest {
+
+	//Magic number at the start of the manifest, "FSM1"
+	private static final int MAGIC = 0x46534D31;
+	private static final int VERSION = 1;
+	//Blocks modified this close to the capture time are always read, as a later change may have kept the same modification time
+	private static final long RACY_MILLIS = 2000;
+
+	//Super block fields of the image the manifest was taken of
+	private final int maxBlocks;
+	private final int root;
+	private final int freeStart;
+	private final int freeEnd;
+	//Time at which the blocks were looked at, milliseconds since the epoch
+	private long capturedAt;
+	//Modification time, size and CRC32 of every block, a size of -1 for a block which has no file
+	private final long[] modified;
+	private final int[] sizes;
+	private final int[] hashes;
+	//Link map of the run which took the manifest
+	private InodeGraph graph;
+
+	private BlockManifest(Superblock superblock)
+	{
+		maxBlocks = superblock.maxBlocks;
+		root = superblock.root;
+		freeStart = superblock.freeStart;
+		freeEnd = superblock.freeEnd;
+		modified = new long[maxBlocks];
+		sizes = new int[maxBlocks];
+		hashes = new int[maxBlocks];
+		Arrays.fill(sizes, -1);
+	}
+
+	/*
+	 * Method to take the manifest of an image, every block file is read once for its CRC32
+	 * Accepts the image directory, the block file name prefix, the super block, the link map of the clean run and the number of threads reading the blocks
+	 */
+	public static BlockManifest capture(Path imageDirectory, String basicFileName, Superblock superblock, InodeGraph graph, int threads) throws IOException
+	{
+		BlockManifest manifest = new BlockManifest(superblock);
+		manifest.capturedAt = System.currentTimeMillis();
+		BitSet blocks = manifest.listBlocks(imageDirectory, basicFileName);
+		manifest.forEachBlock(threads, b -> {
+			if (blocks.get(b))
+			{
+				manifest.record(imageDirectory.resolve(basicFileName + "." + b), b);
+			}
+			return false;
+		});
+		manifest.graph = graph;
+		return manifest;
+	}
+
+	/*
+	 * Method to read the manifest of an earlier run
+	 * Accepts the manifest file and the super block of the image
+	 * Returns the manifest, or null if there is none, it is damaged or it was taken with other super block fields
+	 */
+	public static BlockManifest load(Path file, Superblock superblock)
+	{
+		CRC32 crc = new CRC32();
+		try (InputStream stream = Files.newInputStream(file))
+		{
+			DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(stream, 1 << 16), crc));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				return null;
+			}
+			long capturedAt = in.readLong();
+			if (in.readInt() != superblock.maxBlocks || in.readInt() != superblock.root || in.readInt() != superblock.freeStart
+					|| in.readInt() != superblock.freeEnd)
+			{
+				return null;
+			}
+			BlockManifest manifest = new BlockManifest(superblock);
+			manifest.capturedAt = capturedAt;
+
+			int blockCount = in.readInt();
+			for (int i = 0; i < blockCount; i++)
+			{
+				int block = in.readInt();
+				if (block < 0 || block >= manifest.maxBlocks)
+				{
+					return null;
+				}
+				manifest.modified[block] = in.readLong();
+				manifest.sizes[block] = in.readInt();
+				manifest.hashes[block] = in.readInt();
+			}
+
+			//The names are interned in the order of their identifiers, the first three are the fixed ones of every graph
+			InodeGraph graph = new InodeGraph();
+			int nameCount = in.readInt();
+			for (int id = graph.nameCount(); id < nameCount; id++)
+			{
+				graph.internName(in.readUTF());
+			}
+			int edgeCount = in.readInt();
+			for (int e = 0; e < edgeCount; e++)
+			{
+				int parent = in.readInt();
+				byte type = in.readByte();
+				int nameId = in.readInt();
+				int child = in.readInt();
+				if (nameId < 0 || nameId >= nameCount)
+				{
+					return null;
+				}
+				graph.addEdge(parent, type, nameId, child);
+			}
+			long expected = crc.getValue();
+			if (in.readInt() != (int) expected)
+			{
+				return null;
+			}
+			graph.freeze(manifest.maxBlocks);
+			manifest.graph = graph;
+			return manifest;
+		}
+		catch (NoSuchFileException e)
+		{
+			return null;
+		}
+		catch (IOException e)
+		{
+			//A torn or unreadable manifest is the same as none, the run is a full one
+			return null;
+		}
+	}
+
+	/*
+	 * Method to write the manifest, the file is written next to its final place and moved over it
+	 */
+	public void save(Path file) throws IOException
+	{
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		try (OutputStream stream = Files.newOutputStream(temporary))
+		{
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), crc));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(capturedAt);
+			out.writeInt(maxBlocks);
+			out.writeInt(root);
+			out.writeInt(freeStart);
+			out.writeInt(freeEnd);
+
+			int blockCount = 0;
+			for (int b = 0; b < maxBlocks; b++)
+			{
+				blockCount += sizes[b] >= 0 ? 1 : 0;
+			}
+			out.writeInt(blockCount);
+			for (int b = 0; b < maxBlocks; b++)
+			{
+				if (sizes[b] >= 0)
+				{
+					out.writeInt(b);
+					out.writeLong(modified[b]);
+					out.writeInt(sizes[b]);
+					out.writeInt(hashes[b]);
+				}
+			}
+
+			out.writeInt(graph.nameCount());
+			for (int id = new InodeGraph().nameCount(); id < graph.nameCount(); id++)
+			{
+				out.writeUTF(graph.nameOf(id));
+			}
+			out.writeInt(graph.size());
+			for (int e = 0; e < graph.size(); e++)
+			{
+				out.writeInt(graph.parent(e));
+				out.writeByte(graph.type(e));
+				out.writeInt(graph.nameId(e));
+				out.writeInt(graph.child(e));
+			}
+			out.flush();
+			//The checksum itself is not part of the checked bytes
+			stream.write(intBytes((int) crc.getValue()));
+		}
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/*
+	 * Method to find the blocks which changed since the manifest was taken - modified, new or removed block files
+	 * Accepts the image directory, the block file name prefix and the number of threads looking at the block files
+	 * Returns the changed blocks. The manifest takes the new state of the blocks, so that once the run is found clean it can be saved as it is
+	 */
+	public BitSet changedBlocks(Path imageDirectory, String basicFileName, int threads) throws IOException
+	{
+		long scanStart = System.currentTimeMillis();
+		BitSet present = listBlocks(imageDirectory, basicFileName);
+		BitSet changed = new BitSet(maxBlocks);
+		for (int b : forEachBlock(threads, b -> compare(imageDirectory.resolve(basicFileName + "." + b), b, present.get(b))))
+		{
+			changed.set(b);
+		}
+		capturedAt = scanStart;
+		return changed;
+	}
+
+	/*
+	 * Method to compare a block file with the manifest and take its new state
+	 * Accepts the path of the block file, the block number and whether the file was listed, returns true if the block changed
+	 */
+	private boolean compare(Path path, int block, boolean present) throws IOException
+	{
+		BasicFileAttributes attributes = null;
+		if (present)
+		{
+			try
+			{
+				attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			}
+			catch (NoSuchFileException e)
+			{
+				//Removed since the directory was listed
+			}
+		}
+		if (attributes == null)
+		{
+			boolean removed = sizes[block] >= 0;
+			sizes[block] = -1;
+			return removed;
+		}
+		long time = attributes.lastModifiedTime().toMillis();
+		if (sizes[block] == attributes.size() && modified[block] == time && time < capturedAt - RACY_MILLIS)
+		{
+			return false;
+		}
+		int oldSize = sizes[block];
+		int oldHash = hashes[block];
+		record(path, block);
+		return sizes[block] != oldSize || hashes[block] != oldHash;
+	}
+
+	/*
+	 * Method to find the directories which hold changed blocks, using the link map of the manifest
+	 * A changed directory block is itself such a directory, a changed file inode, index or data block is traced back to the directories
+	 * which have an entry for the file. Blocks which the link map does not reach, e.g. free blocks, lead to no directory
+	 */
+	public BitSet dirtyDirectories(BitSet changed)
+	{
+		BitSet dirty = new BitSet(maxBlocks);
+		BitSet visited = new BitSet(maxBlocks);
+		IntList pending = new IntList(64);
+		for (int b = changed.nextSetBit(0); b >= 0 && b < maxBlocks; b = changed.nextSetBit(b + 1))
+		{
+			pending.add(b);
+		}
+		while (pending.size() > 0)
+		{
+			int block = pending.removeLast();
+			if (visited.get(block))
+			{
+				continue;
+			}
+			visited.set(block);
+			for (int p = graph.firstEdge(block); p < graph.endEdge(block); p++)
+			{
+				if (graph.type(graph.edgeAt(p)) == InodeGraph.TYPE_DIRECTORY)
+				{
+					dirty.set(block);
+					break;
+				}
+			}
+			for (int r = graph.firstReference(block); r < graph.endReference(block); r++)
+			{
+				int link = graph.referenceAt(r);
+				if (graph.nameId(link) != InodeGraph.NAME_BLOCK)
+				{
+					//File entry of a directory, the directories pointed to by directory entries are marked by their own links
+					if (graph.type(link) == InodeGraph.TYPE_FILE)
+					{
+						dirty.set(graph.parent(link));
+					}
+				}
+				else
+				{
+					pending.add(graph.parent(link));
+				}
+			}
+		}
+		return dirty;
+	}
+
+	/*
+	 * Method to set the link map of the run, to be saved with the manifest
+	 */
+	public void setGraph(InodeGraph graph)
+	{
+		this.graph = graph;
+	}
+
+	/*
+	 * Method to get the link map of the run which took the manifest, frozen
+	 */
+	public InodeGraph getGraph()
+	{
+		return graph;
+	}
+
+	/*
+	 * Method to get the number of blocks recorded in the manifest
+	 */
+	public int getBlockCount()
+	{
+		int count = 0;
+		for (int b = 0; b < maxBlocks; b++)
+		{
+			count += sizes[b] >= 0 ? 1 : 0;
+		}
+		return count;
+	}
+
+	/*
+	 * Method to list the block files of the image, files whose suffix is not a block number of the file system are left out
+	 */
+	private BitSet listBlocks(Path imageDirectory, String basicFileName) throws IOException
+	{
+		BitSet blocks = new BitSet(maxBlocks);
+		String prefix = basicFileName + ".";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(imageDirectory, prefix + "*"))
+		{
+			for (Path file : files)
+			{
+				String name = file.getFileName().toString();
+				int block = 0;
+				boolean number = name.length() > prefix.length() && name.length() - prefix.length() <= 9;
+				for (int i = prefix.length(); i < name.length() && number; i++)
+				{
+					char c = name.charAt(i);
+					number = c >= '0' && c <= '9';
+					block = block * 10 + (c - '0');
+				}
+				if (number && block < maxBlocks)
+				{
+					blocks.set(block);
+				}
+			}
+		}
+		return blocks;
+	}
+
+	/*
+	 * Action on one block number, run by forEachBlock
+	 */
+	private interface BlockAction
+	{
+		boolean run(int block) throws IOException;
+	}
+
+	/*
+	 * Method to run an action on every block number of the file system, on a fork/join pool of the given number of threads
+	 * Each block is only touched by its own action, so the actions share the manifest arrays without locking
+	 * Returns the block numbers for which the action returned true, in ascending order
+	 */
+	private int[] forEachBlock(int threads, BlockAction action) throws IOException
+	{
+		ForkJoinPool pool = new ForkJoinPool(Math.max(threads, 1));
+		try
+		{
+			return pool.submit(() -> IntStream.range(0, maxBlocks).parallel().filter(b -> {
+				try
+				{
+					return action.run(b);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}).toArray()).get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while looking at the blocks", e);
+		}
+		catch (ExecutionException e)
+		{
+			//The fork/join pool may wrap the exception of the worker thread once more
+			for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof IOException)
+				{
+					throw (IOException) cause;
+				}
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Method to record the modification time, size and CRC32 of a block file
+	 */
+	private void record(Path path, int block) throws IOException
+	{
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		byte[] content = Files.readAllBytes(path);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		modified[block] = attributes.lastModifiedTime().toMillis();
+		sizes[block] = content.length;
+		hashes[block] = (int) crc.getValue();
+	}
+
+	private static byte[] intBytes(int value)
+	{
+		return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+	}
+}
@@ -0,0 +1,214 @@
+package fsck;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Class Name: BlockOwnership
+ * Description: Owner of every block of the file system, filled from the links of the link map while the referenced blocks are marked
+ *              for the free block list check, to find the blocks which are cross-linked - pointed to by two different blocks.
+ *              A block pointed to by a file location or an index entry is owned by the inode or index block holding the pointer.
+ *              An inode named by directory entries is owned by the first directory naming it, further directory entries are not
+ *              a conflict as an inode may have many links, but a block pointer to it is. The super block and the free block list
+ *              blocks are reserved, any link to them is a conflict.
+ *              A block stays shared once a conflict is found, so a block is reported once however many links point to it.
+ *              The streaming check keeps no int per block, only bitmaps - the blocks pointed to by a block pointer, the blocks named by
+ *              a directory entry and the holders whose pointers are recorded - and the owners of the pointers of the current directory.
+ *              The same conflicts are found, the first owner is named when it is in the current directory, else only its kind.
+ */
+public class BlockOwnership {
+
+	//Owner of a block no link points to
+	public static final int UNOWNED = -1;
+	//Owner of a block found cross-linked
+	public static final int SHARED = -2;
+	//Owner of the super block and the free block list blocks
+	public static final int RESERVED = -3;
+	//Owners of a block pointed to, or named, from an earlier directory of the streaming check, which is not kept
+	public static final int POINTER = -4;
+	public static final int NAMED = -5;
+	//Owner of an inode named by a directory entry is ENTRY - directory block number
+	private static final int ENTRY = -6;
+
+	//Variable to store the owner of every block number, null when only the bitmaps are kept
+	private final int[] owners;
+
+	//Bitmaps of the streaming check - reserved, pointed to, named, found shared, and holders whose pointers are recorded
+	private final BitSet reserved;
+	private final BitSet pointed;
+	private final BitSet named;
+	private final BitSet shared;
+	private final BitSet holders;
+	//Holders of the current directory, recorded in holders by nextDirectory, and the owners of the blocks they point to
+	private final BitSet directoryHolders;
+	private final Map<Integer, Integer> directoryPointers;
+	//Variable to store the number of blocks, for the bitmaps
+	private final int maxBlocks;
+
+	/*
+	 * Constructor for the owner map
+	 * Accepts the maximum number of blocks and whether the owner of every block is kept, else only the bitmaps of the streaming check
+	 */
+	public BlockOwnership(int maxBlocks, boolean keepOwners)
+	{
+		this.maxBlocks = Math.max(maxBlocks, 0);
+		if (keepOwners)
+		{
+			owners = new int[this.maxBlocks];
+			Arrays.fill(owners, UNOWNED);
+			reserved = null;
+			pointed = null;
+			named = null;
+			shared = null;
+			holders = null;
+			directoryHolders = null;
+			directoryPointers = null;
+		}
+		else
+		{
+			owners = null;
+			reserved = new BitSet(this.maxBlocks);
+			pointed = new BitSet(this.maxBlocks);
+			named = new BitSet(this.maxBlocks);
+			shared = new BitSet();
+			holders = new BitSet(this.maxBlocks);
+			directoryHolders = new BitSet();
+			directoryPointers = new HashMap<Integer, Integer>();
+		}
+	}
+
+	/*
+	 * Method to reserve the blocks of a range, from the first block to the block after the last one, for the file system itself
+	 */
+	public void reserve(int from, int to)
+	{
+		int start = Math.max(from, 0);
+		int end = Math.max(Math.min(to, maxBlocks), start);
+		if (owners != null)
+		{
+			Arrays.fill(owners, start, end, RESERVED);
+		}
+		else
+		{
+			reserved.set(start, end);
+		}
+	}
+
+	/*
+	 * Method to record a link to a block
+	 * Accepts the block number, the block holding the link and whether the link is a directory entry or a block pointer
+	 * Returns the owner the block had when the link makes it cross-linked, UNOWNED otherwise - also for a block outside the file system
+	 */
+	public int claim(int block, int owner, boolean directoryEntry)
+	{
+		if (block < 0 || block >= maxBlocks)
+		{
+			return UNOWNED;
+		}
+		if (owners == null)
+		{
+			return claimBit(block, owner, directoryEntry);
+		}
+		int previous = owners[block];
+		int claimed = directoryEntry ? ENTRY - owner : owner;
+		if (previous == UNOWNED)
+		{
+			owners[block] = claimed;
+			return UNOWNED;
+		}
+		//The same block holding the link again, e.g. the files of a hard link read from both of its directories, or another entry for an inode
+		if (previous == claimed || previous == SHARED || (directoryEntry && previous <= ENTRY))
+		{
+			return UNOWNED;
+		}
+		owners[block] = SHARED;
+		return previous;
+	}
+
+	/*
+	 * Method to record a link to a block in the bitmaps, with the same rules as claim
+	 */
+	private int claimBit(int block, int owner, boolean directoryEntry)
+	{
+		//The pointers of a file reached again from a later directory, through a hard link, were recorded the first time
+		if (shared.get(block) || (!directoryEntry && owner >= 0 && holders.get(owner)))
+		{
+			return UNOWNED;
+		}
+		int previous = UNOWNED;
+		if (reserved.get(block))
+		{
+			previous = RESERVED;
+		}
+		else if (directoryEntry)
+		{
+			if (pointed.get(block))
+			{
+				previous = directoryPointers.getOrDefault(block, POINTER);
+			}
+			named.set(block);
+		}
+		else
+		{
+			if (owner >= 0)
+			{
+				directoryHolders.set(owner);
+			}
+			Integer pointer = directoryPointers.get(block);
+			if (named.get(block))
+			{
+				previous = NAMED;
+			}
+			else if (pointed.get(block) && (pointer == null || pointer != owner))
+			{
+				previous = pointer != null ? pointer : POINTER;
+			}
+			pointed.set(block);
+			directoryPointers.putIfAbsent(block, owner);
+		}
+		if (previous != UNOWNED)
+		{
+			shared.set(block);
+		}
+		return previous;
+	}
+
+	/*
+	 * Method to end the links of a directory of the streaming check, the owners of its pointers are not kept any longer
+	 */
+	public void nextDirectory()
+	{
+		if (owners == null)
+		{
+			holders.or(directoryHolders);
+			directoryHolders.clear();
+			directoryPointers.clear();
+		}
+	}
+
+	/*
+	 * Method to describe an owner returned by claim, or the block holding a link
+	 */
+	public static String describe(int owner, boolean directoryEntry)
+	{
+		if (owner == RESERVED)
+		{
+			return "the super block or the free block list";
+		}
+		if (owner == POINTER)
+		{
+			return "a block pointer of an earlier directory";
+		}
+		if (owner == NAMED)
+		{
+			return "a directory entry";
+		}
+		if (owner <= ENTRY)
+		{
+			return "the directory entry in block " + (ENTRY - owner);
+		}
+		return directoryEntry ? "the directory entry in block " + owner : "block " + owner;
+	}
+}
@@ -0,0 +1,150 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Class Name: BlockPrefetcher
+ * Description: Read ahead of the blocks the directory walk is about to ask for. As soon as a directory block is tokenized the walker
+ *              hands its entries over, and a small pool of I/O threads reads the inodes of the children, and for a file the location
+ *              block its inode points to, into the block cache while the walk is still busy with the blocks before them.
+ *              The walk then reads the blocks through the BlockStore as before, it is served from the cache or waits for the read
+ *              already under way, so the latency of the disk is paid by the I/O threads instead of the walk.
+ *              At most window blocks are queued at a time, the blocks handed over beyond it are left for the walk to read, so the
+ *              prefetched blocks are not evicted from the cache before they are used. A block which could not be read is ignored,
+ *              the walk reads it again and reports the failure.
+ */
+public class BlockPrefetcher {
+
+	//Variable to store the block store the blocks are read into
+	private final BlockStore blockStore;
+	//Variable to store the maximum number of blocks in the file system, a location outside of it is not read
+	private final int maxBlocks;
+	//Variable to store the maximum number of blocks queued or being read
+	private final int window;
+	//Number of blocks queued or being read
+	private final AtomicInteger outstanding = new AtomicInteger();
+	//Pool of the I/O threads, daemon threads so that a prefetcher which is not closed does not keep the JVM running
+	private final ExecutorService executor;
+
+	/*
+	 * Constructor for the prefetcher
+	 * Accepts the block store, the maximum number of blocks, the number of I/O threads and the maximum number of blocks queued
+	 */
+	public BlockPrefetcher(BlockStore blockStore, int maxBlocks, int threads, int window)
+	{
+		this.blockStore = blockStore;
+		this.maxBlocks = maxBlocks;
+		this.window = Math.max(window, 1);
+		this.executor = Executors.newFixedThreadPool(Math.max(threads, 1), task -> {
+			Thread thread = new Thread(task, "csefsck-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * Method to read a block ahead of the walk, a directory or any block which is used as it is
+	 * Accepts the block number, does not wait for the read
+	 */
+	public void prefetch(int block)
+	{
+		if (reserve(block))
+		{
+			submit(() -> {
+				read(block);
+			});
+		}
+	}
+
+	/*
+	 * Method to read the inode of a file ahead of the walk, followed by its location block when the inode has one
+	 * Accepts the block number of the inode, does not wait for the reads
+	 */
+	public void prefetchFile(int block)
+	{
+		if (reserve(block))
+		{
+			submit(() -> {
+				ByteBuffer text = read(block);
+				if (text == null)
+				{
+					return;
+				}
+				InodeRecord inode = new InodeRecord().parse(text);
+				if (inode.hasIndirect && inode.hasLocation && inode.location >= 0 && inode.location < maxBlocks)
+				{
+					read((int) inode.location);
+				}
+			});
+		}
+	}
+
+	/*
+	 * Method to stop the I/O threads, the blocks still queued are not read
+	 */
+	public void close()
+	{
+		executor.shutdownNow();
+	}
+
+	/*
+	 * Method to take a place in the window for a block which is neither cached nor being read
+	 * Returns false when the block is not to be read
+	 */
+	private boolean reserve(int block)
+	{
+		if (block < 0 || block >= maxBlocks || blockStore.isLoaded(block))
+		{
+			return false;
+		}
+		if (outstanding.incrementAndGet() > window)
+		{
+			outstanding.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	private void submit(Runnable read)
+	{
+		try
+		{
+			executor.execute(() -> {
+				try
+				{
+					read.run();
+				}
+				finally
+				{
+					outstanding.decrementAndGet();
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			//The prefetcher is closed, the walk reads the block itself
+			outstanding.decrementAndGet();
+		}
+	}
+
+	/*
+	 * Method to read a block into the cache
+	 * Returns the block, or null if it could not be read
+	 */
+	private ByteBuffer read(int block)
+	{
+		try
+		{
+			return blockStore.readBlock(block);
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+	}
+}
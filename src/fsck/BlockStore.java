@@ -0,0 +1,375 @@
+package fsck;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/*
+ * Class Name: BlockStore
+ * Description: Single point of access to the fusedata.N blocks of a file system image.
+ *              Blocks are read through a FileChannel into a reusable direct buffer and handed out as raw bytes, they are never decoded
+ *              to Strings - the BlockTokenizer parses the ASCII digits in place.
+ *              Read blocks are kept in a bounded LRU cache so that every check can re-visit a block without going back to the disk.
+ *              The cache is bounded by the heap size of the cached blocks rather than by the number of blocks, as directory blocks are much larger than index blocks.
+ *              Any code which rewrites a block must call invalidate so that the next read sees the new content, or write it with writeBlock.
+ *              The store can be shared by any number of threads. Only the cache lookups hold the lock, the disk reads of different threads
+ *              run at the same time, each thread reading into its own direct buffer. A block is only read by one thread at a time, the
+ *              other threads asking for it wait for that read.
+ *              The blocks of a packed image are read from and written to its PackedImage instead of the block files.
+ */
+public class BlockStore {
+
+	//Approximate fixed heap cost of a cached block - map entry, buffer and array headers
+	private static final long BLOCK_OVERHEAD = 112;
+
+	//Variable to store the directory holding the file system image
+	private final Path imageDirectory;
+	//Variable to store the common pattern of the file naming of the file blocks
+	private final String basicFileName;
+	//Variable to store the maximum number of bytes the cache may hold
+	private final long capacity;
+
+	//Access ordered map, the eldest entry is always the least recently used block
+	private final LinkedHashMap<Integer, ByteBuffer> cache = new LinkedHashMap<Integer, ByteBuffer>(256, 0.75f, true);
+	//Variable to store the current approximate size of the cache in bytes
+	private long cachedBytes = 0;
+	//Counters for the cache statistics
+	private long hits = 0;
+	private long misses = 0;
+	//Variables to store the number of blocks and bytes read from the disk, a miss whose read failed is not counted
+	private long blocksRead = 0;
+	private long bytesRead = 0;
+	//Blocks being read from the disk, completed with the block once it is read
+	private final Map<Integer, CompletableFuture<ByteBuffer>> inFlight = new HashMap<Integer, CompletableFuture<ByteBuffer>>();
+	//Number of times each rewritten block was invalidated, a read started before an invalidation is not cached
+	private final Map<Integer, Integer> generations = new HashMap<Integer, Integer>();
+
+	//Reusable direct buffer of each thread the blocks are read into, grown when a block larger than it is found
+	private final ThreadLocal<ByteBuffer> readBuffer;
+	//Variable to store the pack the blocks are read from, null for an image with a file per block
+	private final PackedImage packed;
+
+	/*
+	 * Constructor for the block store
+	 * Accepts the image directory, the block file name prefix, the size of a block and the cache capacity in bytes
+	 */
+	public BlockStore(Path imageDirectory, String basicFileName, int blockSize, long capacity)
+	{
+		this(imageDirectory, basicFileName, blockSize, capacity, null);
+	}
+
+	/*
+	 * Constructor for the block store of an image which may be packed
+	 * Accepts the same values and the opened pack of the image, null for an image with a file per block. The pack is closed by close
+	 */
+	public BlockStore(Path imageDirectory, String basicFileName, int blockSize, long capacity, PackedImage packed)
+	{
+		this.imageDirectory = imageDirectory;
+		this.basicFileName = basicFileName;
+		this.capacity = capacity;
+		this.readBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(blockSize));
+		this.packed = packed;
+	}
+
+	/*
+	 * Method to open the block store of an image directory, reading the pack of the image when the directory holds a packed image
+	 * Accepts the image directory, the block file name prefix, the size of a block and the cache capacity in bytes
+	 */
+	public static BlockStore open(Path imageDirectory, String basicFileName, int blockSize, long capacity) throws IOException
+	{
+		PackedImage packed = null;
+		if (PackedImage.isPacked(imageDirectory, basicFileName))
+		{
+			packed = PackedImage.open(PackedImage.packPath(imageDirectory, basicFileName));
+		}
+		return new BlockStore(imageDirectory, basicFileName, blockSize, capacity, packed);
+	}
+
+	/*
+	 * Method to tell whether the blocks are read from a pack rather than from a file per block
+	 */
+	public boolean isPacked()
+	{
+		return packed != null;
+	}
+
+	/*
+	 * Method to close the pack of a packed image, the store of an image with a file per block holds no open file
+	 */
+	public void close() throws IOException
+	{
+		if (packed != null)
+		{
+			packed.close();
+		}
+	}
+
+	/*
+	 * Method to get the path of a block in the image
+	 * Accepts the block number and returns the path of the file holding the block
+	 */
+	public Path blockPath(int blockNumber)
+	{
+		return Paths.get(imageDirectory.toString(), basicFileName + "." + blockNumber);
+	}
+
+	/*
+	 * Method to read the bytes of a block
+	 * Accepts the block number, serves the block from the cache if present else reads it from the disk and caches it
+	 * Returns a read only buffer holding the block between its position and limit. The buffer is shared with other callers,
+	 * it must only be read with absolute gets and its position and limit must not be changed
+	 */
+	public ByteBuffer readBlock(int blockNumber) throws IOException
+	{
+		//The block is read outside the lock. A thread missing a block which another thread is reading waits for that read instead of
+		//reading the block again, so a block prefetched ahead of the walk is read once however soon the walk asks for it
+		CompletableFuture<ByteBuffer> reading = null;
+		CompletableFuture<ByteBuffer> pending;
+		int generation;
+		synchronized (this)
+		{
+			ByteBuffer block = cache.get(blockNumber);
+			if (block != null)
+			{
+				hits++;
+				Metrics.cacheHit();
+				return block;
+			}
+			pending = inFlight.get(blockNumber);
+			generation = generations.getOrDefault(blockNumber, 0);
+			if (pending != null)
+			{
+				hits++;
+				Metrics.cacheHit();
+			}
+			else
+			{
+				misses++;
+				Metrics.cacheMiss();
+				reading = new CompletableFuture<ByteBuffer>();
+				inFlight.put(blockNumber, reading);
+			}
+		}
+		if (pending != null)
+		{
+			return await(pending);
+		}
+
+		ByteBuffer block;
+		try
+		{
+			long start = Metrics.start();
+			block = read(blockNumber);
+			Metrics.blockRead(blockNumber, block.capacity(), start);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			synchronized (this)
+			{
+				inFlight.remove(blockNumber, reading);
+			}
+			reading.completeExceptionally(e);
+			throw e;
+		}
+		long weight = BLOCK_OVERHEAD + block.capacity();
+		synchronized (this)
+		{
+			inFlight.remove(blockNumber, reading);
+			blocksRead++;
+			bytesRead += block.capacity();
+			//Blocks larger than the whole cache are served but never cached, nor is a block rewritten while it was being read,
+			//which may hold the old content
+			if (weight <= capacity && generation == generations.getOrDefault(blockNumber, 0))
+			{
+				ByteBuffer cached = cache.putIfAbsent(blockNumber, block);
+				if (cached != null)
+				{
+					block = cached;
+				}
+				else
+				{
+					cachedBytes += weight;
+					evict();
+				}
+			}
+		}
+		reading.complete(block);
+		return block;
+	}
+
+	/*
+	 * Method to tell whether a block is in the cache or being read, in which case a read of it will not go to the disk again
+	 * Accepts the block number, the block is not marked as used in the cache
+	 */
+	public synchronized boolean isLoaded(int blockNumber)
+	{
+		return cache.containsKey(blockNumber) || inFlight.containsKey(blockNumber);
+	}
+
+	/*
+	 * Method to wait for the read of a block started by another thread
+	 * Returns the block, or throws the exception the read failed with
+	 */
+	private static ByteBuffer await(CompletableFuture<ByteBuffer> pending) throws IOException
+	{
+		try
+		{
+			return pending.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a block read");
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException)
+			{
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/*
+	 * Method to drop a block from the cache after it has been rewritten on the disk
+	 * A read of the block under way is not cached once it completes and later reads go to the disk again instead of waiting for it
+	 * Accepts the block number, does not return any value
+	 */
+	public synchronized void invalidate(int blockNumber)
+	{
+		generations.merge(blockNumber, 1, Integer::sum);
+		inFlight.remove(blockNumber);
+		ByteBuffer block = cache.remove(blockNumber);
+		if (block != null)
+		{
+			cachedBytes -= BLOCK_OVERHEAD + block.capacity();
+		}
+	}
+
+	/*
+	 * Method to replace the content of a block atomically
+	 * Accepts the block number and the new content, which is written to a temporary file in the image directory and then moved
+	 * over the block, so that the block holds either the old or the new content even if the program is stopped half way
+	 * The content is not forced to the disk, callers which need it to be durable call force once all their blocks are written
+	 * A block of a packed image is written into the pack instead, see PackedImage
+	 * Drops the block from the cache, does not return any value
+	 */
+	public void writeBlock(int blockNumber, ByteBuffer content) throws IOException
+	{
+		if (packed != null)
+		{
+			packed.write(blockNumber, content);
+			invalidate(blockNumber);
+			return;
+		}
+		Path block = blockPath(blockNumber);
+		Path temporary = Paths.get(imageDirectory.toString(), basicFileName + "." + blockNumber + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (content.hasRemaining())
+			{
+				channel.write(content);
+			}
+		}
+		Files.move(temporary, block, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		invalidate(blockNumber);
+	}
+
+	/*
+	 * Method to force the content of a block written with writeBlock to the disk
+	 * Accepts the block number, does not return any value
+	 */
+	public void force(int blockNumber) throws IOException
+	{
+		if (packed != null)
+		{
+			packed.force();
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(blockPath(blockNumber), StandardOpenOption.WRITE))
+		{
+			channel.force(true);
+		}
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getBlocksRead()
+	{
+		return blocksRead;
+	}
+
+	public synchronized long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/*
+	 * Method to read a block from the disk through the direct buffer
+	 * Accepts the block number, returns a read only heap buffer sized to the block
+	 */
+	private ByteBuffer read(int blockNumber) throws IOException
+	{
+		if (packed != null)
+		{
+			return packed.read(blockNumber);
+		}
+		try (FileChannel channel = FileChannel.open(blockPath(blockNumber), StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			ByteBuffer readBuffer = this.readBuffer.get();
+			if (size > readBuffer.capacity())
+			{
+				readBuffer = ByteBuffer.allocateDirect((int) size);
+				this.readBuffer.set(readBuffer);
+			}
+			readBuffer.clear();
+			while (channel.read(readBuffer) > 0 && readBuffer.hasRemaining())
+			{
+			}
+			readBuffer.flip();
+
+			byte[] bytes = new byte[readBuffer.remaining()];
+			readBuffer.get(bytes);
+			return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		}
+	}
+
+	/*
+	 * Method to remove the least recently used blocks until the cache fits in its capacity
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<Integer, ByteBuffer>> eldest = cache.entrySet().iterator();
+		while (cachedBytes > capacity && eldest.hasNext())
+		{
+			cachedBytes -= BLOCK_OVERHEAD + eldest.next().getValue().capacity();
+			eldest.remove();
+		}
+	}
+}
@@ -0,0 +1,369 @@
+package fsck;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/*
+ * Class Name: BlockTokenizer
+ * Description: Single pass tokenizer for the text format of the file system blocks. The raw ASCII bytes of a block, between the position
+ *              and the limit of the buffer, are scanned once and every key value pair is reported to a Handler as the position of the key
+ *              in the buffer and the numeric value, so the block is never decoded to characters and no substrings are created while parsing.
+ *              Supported formats
+ *              a. Super block and inode blocks: {key:value, key:value, ..., indirect:1 location:28}
+ *                 Key value pairs are separated by commas or white space. A value may be a nested {type:name:block, ...} dictionary
+ *                 as in filename_to_inode_dict, every entry of it is reported separately.
+ *              b. Free block list and index blocks: X, Y, Z
+ *              Blocks in the binary encoding of BinaryBlock are decoded by it and reported to the Handler in the same way.
+ *              The tokenizer holds no state, it can be used by any number of callers at the same time and from inside a Handler.
+ */
+public final class BlockTokenizer {
+
+	//Flag to indicate that the block lists are marked with the VectorListParser, when the JVM was started with --add-modules jdk.incubator.vector
+	private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+			&& !Boolean.getBoolean("fsck.scalar");
+
+	/*
+	 * Receiver of the tokens found in a block
+	 */
+	public interface Handler
+	{
+		/*
+		 * Called for every key with a numeric value, the key is text[keyStart, keyEnd)
+		 */
+		void attribute(ByteBuffer text, int keyStart, int keyEnd, long value);
+
+		/*
+		 * Called for every entry of a nested dictionary, e.g. d:test:30. The type is the entry type character, the name is text[nameStart, nameEnd)
+		 */
+		default void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int block)
+		{
+		}
+	}
+
+	private BlockTokenizer()
+	{
+	}
+
+	/*
+	 * Method to tokenize a key value formatted block (super block, directory inode or file inode)
+	 * Accepts the text of the block and the handler which receives the tokens
+	 * Values which are not numbers are skipped
+	 */
+	public static void tokenize(ByteBuffer text, Handler handler)
+	{
+		long start = Metrics.start();
+		if (BinaryBlock.isBinary(text))
+		{
+			BinaryBlock.tokenize(text, handler);
+			Metrics.parsed(start);
+			return;
+		}
+		int length = text.limit();
+		int i = text.position();
+		while (i < length)
+		{
+			byte c = text.get(i);
+			if (c == '{' || c == '}' || c == ',' || isSpace(c))
+			{
+				i++;
+				continue;
+			}
+
+			//Scan the key up to the colon separating it from the value
+			int keyStart = i;
+			while (i < length && text.get(i) != ':' && text.get(i) != ',' && text.get(i) != '}')
+			{
+				i++;
+			}
+			if (i >= length || text.get(i) != ':')
+			{
+				//A word without a value, nothing to report
+				continue;
+			}
+			int keyEnd = trimEnd(text, keyStart, i);
+			i = skipSpaces(text, i + 1, length);
+
+			//Nested dictionary, e.g. filename_to_inode_dict: {d:.:26, d:..:26}
+			if (i < length && text.get(i) == '{')
+			{
+				i = tokenizeEntries(text, i + 1, length, handler);
+				continue;
+			}
+
+			//Numeric value, terminated by a comma, a closing bracket or a white space
+			boolean negative = false;
+			if (i < length && (text.get(i) == '-' || text.get(i) == '+'))
+			{
+				negative = text.get(i) == '-';
+				i++;
+			}
+			long value = 0;
+			int digits = 0;
+			while (i < length && isDigit(text.get(i)))
+			{
+				value = value * 10 + (text.get(i) - '0');
+				digits++;
+				i++;
+			}
+			boolean numeric = digits > 0;
+			while (i < length && text.get(i) != ',' && text.get(i) != '}' && !isSpace(text.get(i)))
+			{
+				numeric = false;
+				i++;
+			}
+			if (numeric)
+			{
+				handler.attribute(text, keyStart, keyEnd, negative ? -value : value);
+			}
+		}
+		Metrics.parsed(start);
+	}
+
+	/*
+	 * Method to parse a comma separated list of block numbers, as stored in the free block list and the index blocks
+	 * Accepts the text of the block and the list to which the block numbers are appended, empty items are skipped
+	 * Returns true if every item of the list is a non negative integer, false as soon as an item is found which is not,
+	 * in which case the list holds only the block numbers read before that item
+	 */
+	public static boolean parseBlockList(ByteBuffer text, IntList blockNumbers)
+	{
+		long start = Metrics.start();
+		boolean isBlockList = BinaryBlock.isBinary(text) ? BinaryBlock.parseList(text, blockNumbers) : parseList(text, blockNumbers);
+		Metrics.parsed(start);
+		return isBlockList;
+	}
+
+	/*
+	 * Method to mark the block numbers of a comma separated list in a bitmap, as parseBlockList without the list in between
+	 * Accepts the text of the block, the bitmap and the number of blocks, block numbers not below it are not marked
+	 * Returns true if every item of the list is a non negative integer, false as soon as an item is found which is not, in which case
+	 * only the block numbers before that item are marked
+	 */
+	public static boolean markBlockList(ByteBuffer text, BitSet blocks, int maxBlocks)
+	{
+		return markBlockList(text, blocks, 0, maxBlocks, null);
+	}
+
+	/*
+	 * Method to mark the block numbers of a list which fall in a range in the bitmap of that range, bit 0 standing for the first block
+	 * Accepts the text of the block, the bitmap, the range from its first block to the block after its last one, and the list to which
+	 * the block numbers outside the range are appended, in the order they are listed - they are dropped if the list is null
+	 * Returns true if every item of the list is a non negative integer, as markBlockList above
+	 */
+	public static boolean markBlockList(ByteBuffer text, BitSet blocks, int from, int to, IntList outside)
+	{
+		long start = Metrics.start();
+		boolean isBlockList;
+		if (BinaryBlock.isBinary(text))
+		{
+			IntList blockNumbers = new IntList(512);
+			isBlockList = BinaryBlock.parseList(text, blockNumbers);
+			for (int k = 0; k < blockNumbers.size(); k++)
+			{
+				mark(blockNumbers.get(k), blocks, from, to, outside);
+			}
+		}
+		else if (VECTORIZED)
+		{
+			isBlockList = VectorListParser.mark(text, blocks, from, to, outside);
+		}
+		else
+		{
+			isBlockList = markList(text, text.position(), blocks, from, to, outside);
+		}
+		Metrics.parsed(start);
+		return isBlockList;
+	}
+
+	/*
+	 * Method to mark the block numbers of a list from a position on, the scalar part of markBlockList
+	 * The position must be at the start of an item or of a separator
+	 */
+	static boolean markList(ByteBuffer text, int i, BitSet blocks, int from, int to, IntList outside)
+	{
+		int length = text.limit();
+		while (i < length)
+		{
+			byte c = text.get(i);
+			if (c == ',' || isSpace(c))
+			{
+				i++;
+				continue;
+			}
+
+			long value = 0;
+			while (i < length && isDigit(text.get(i)))
+			{
+				value = value * 10 + (text.get(i) - '0');
+				if (value > Integer.MAX_VALUE)
+				{
+					return false;
+				}
+				i++;
+			}
+			if (i < length && text.get(i) != ',' && !isSpace(text.get(i)))
+			{
+				return false;
+			}
+			mark((int) value, blocks, from, to, outside);
+		}
+		return true;
+	}
+
+	/*
+	 * Method to mark a block number in the bitmap of a range, or to add it to the block numbers outside the range
+	 */
+	static void mark(int blockNumber, BitSet blocks, int from, int to, IntList outside)
+	{
+		if (blockNumber >= from && blockNumber < to)
+		{
+			blocks.set(blockNumber - from);
+		}
+		else if (outside != null)
+		{
+			outside.add(blockNumber);
+		}
+	}
+
+	private static boolean parseList(ByteBuffer text, IntList blockNumbers)
+	{
+		int length = text.limit();
+		int i = text.position();
+		while (i < length)
+		{
+			byte c = text.get(i);
+			if (c == ',' || isSpace(c))
+			{
+				i++;
+				continue;
+			}
+
+			long value = 0;
+			while (i < length && isDigit(text.get(i)))
+			{
+				value = value * 10 + (text.get(i) - '0');
+				if (value > Integer.MAX_VALUE)
+				{
+					return false;
+				}
+				i++;
+			}
+			//Anything other than a digit run followed by a separator means that this is not a list of block numbers
+			if (i < length && text.get(i) != ',' && !isSpace(text.get(i)))
+			{
+				return false;
+			}
+			blockNumbers.add((int) value);
+		}
+		return true;
+	}
+
+	/*
+	 * Method to compare a key found by the tokenizer with an expected ASCII key without decoding the bytes
+	 * Accepts the text, the key position and the expected key, returns true if they are equal
+	 */
+	public static boolean keyEquals(ByteBuffer text, int keyStart, int keyEnd, String key)
+	{
+		if (keyEnd - keyStart != key.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++)
+		{
+			if (text.get(keyStart + i) != (byte) key.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Method to tokenize the entries of a nested dictionary, each entry is of the form type:name:block
+	 * Accepts the text, the position after the opening bracket, the length of the text and the handler
+	 * Returns the position after the closing bracket
+	 */
+	private static int tokenizeEntries(ByteBuffer text, int i, int length, Handler handler)
+	{
+		while (i < length)
+		{
+			byte c = text.get(i);
+			if (c == '}')
+			{
+				return i + 1;
+			}
+			if (c == ',' || isSpace(c))
+			{
+				i++;
+				continue;
+			}
+
+			//Find the end of the entry and the first and last colons in it, the name is between the two colons
+			int entryStart = i;
+			int firstColon = -1;
+			int lastColon = -1;
+			while (i < length && text.get(i) != ',' && text.get(i) != '}')
+			{
+				if (text.get(i) == ':')
+				{
+					if (firstColon < 0)
+					{
+						firstColon = i;
+					}
+					lastColon = i;
+				}
+				i++;
+			}
+			if (firstColon < 0 || firstColon == lastColon)
+			{
+				continue;
+			}
+
+			int blockStart = skipSpaces(text, lastColon + 1, i);
+			int blockEnd = trimEnd(text, blockStart, i);
+			long block = 0;
+			boolean numeric = blockEnd > blockStart;
+			for (int d = blockStart; d < blockEnd && numeric; d++)
+			{
+				numeric = isDigit(text.get(d));
+				block = block * 10 + (text.get(d) - '0');
+				numeric = numeric && block <= Integer.MAX_VALUE;
+			}
+			if (numeric)
+			{
+				int nameStart = skipSpaces(text, firstColon + 1, lastColon);
+				int nameEnd = trimEnd(text, nameStart, lastColon);
+				handler.entry(text.get(entryStart), text, nameStart, nameEnd, (int) block);
+			}
+		}
+		return i;
+	}
+
+	private static int skipSpaces(ByteBuffer text, int i, int end)
+	{
+		while (i < end && isSpace(text.get(i)))
+		{
+			i++;
+		}
+		return i;
+	}
+
+	private static int trimEnd(ByteBuffer text, int start, int end)
+	{
+		while (end > start && isSpace(text.get(end - 1)))
+		{
+			end--;
+		}
+		return end;
+	}
+
+	private static boolean isSpace(byte c)
+	{
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	private static boolean isDigit(byte c)
+	{
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,76 @@
+package fsck;
+
+import java.util.EnumSet;
+
+/*
+ * Class Name: Check
+ * Description: One consistency check of the file system as seen by the CheckScheduler.
+ *              A check declares the parts of the file system it reads and the parts its repairs write. The detection (detect) only
+ *              reads the blocks and the link map and records what it found in a Findings, the repairs recorded along with the errors
+ *              are applied later by the scheduler one check at a time, in the order in which the checks were added.
+ */
+public abstract class Check {
+
+	/*
+	 * Parts of the file system a check can read or write
+	 */
+	public enum Resource
+	{
+		//The super block
+		SUPERBLOCK,
+		//The blocks holding the free block list
+		FREE_LIST,
+		//The filename_to_inode_dict of the directory inodes, i.e. the directory entries
+		DIRECTORY_ENTRIES,
+		//The other attributes of the directory inodes - times, linkcount, size
+		DIRECTORY_ATTRIBUTES,
+		//The file inodes and the index blocks
+		FILES,
+		//The current link map (directoryLinkList), replaced when the directory tree is walked again
+		LINK_MAP
+	}
+
+	//Variable to store the id of the check, used in the summary of the report and when the check fails unexpectedly
+	private final String name;
+	//Variable to store the parts of the file system which the detection reads
+	private final EnumSet<Resource> reads;
+	//Variable to store the parts of the file system which the repairs write
+	private final EnumSet<Resource> writes;
+
+	protected Check(String name, EnumSet<Resource> reads, EnumSet<Resource> writes)
+	{
+		this.name = name;
+		this.reads = reads;
+		this.writes = writes;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public EnumSet<Resource> getReads()
+	{
+		return reads;
+	}
+
+	public EnumSet<Resource> getWrites()
+	{
+		return writes;
+	}
+
+	/*
+	 * Method to find out if the repairs of the check change the file system
+	 */
+	public boolean mutates()
+	{
+		return !writes.isEmpty();
+	}
+
+	/*
+	 * Method to run the detection part of the check
+	 * Accepts the findings to which the errors and their repairs are added, must not change any block
+	 * May be run at the same time as other checks, so it must not use any shared scratch object
+	 */
+	public abstract void detect(Findings findings);
+}
@@ -0,0 +1,176 @@
+package fsck;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Class Name: CheckScheduler
+ * Description: Runs a list of checks with their detections in parallel and their repairs one after the other.
+ *              The checks are added in the order in which their reports are to be printed. The detection of a check starts as soon as
+ *              every earlier check which writes something it reads has applied its repairs, so checks which only depend on the
+ *              initial state of the file system all run at the same time on the shared (frozen) link map.
+ *              The findings of the checks are applied - reported and repaired - strictly in the order of the checks from the calling thread.
+ *              As a check is only applied after all the earlier checks are, no repair can change a block while an earlier check which reads
+ *              it is still detecting, and the report is the same as the one of a serial run.
+ *              The repairs of a check which writes the file system plan their block rewrites in the RepairJournal, the journal is committed
+ *              once the findings of the check are applied, before the detection of any check which reads what it writes is started.
+ *              The time of each check, its detection plus the application of its findings, is added to the summary of the report.
+ */
+public class CheckScheduler {
+
+	//Variable to store the number of threads running the detections
+	private final int threads;
+	//Variable to store the journal in which the repairs plan their block rewrites
+	private final RepairJournal journal;
+	//Variable to store the sink the findings are reported to
+	private final ReportSink report;
+	//Variable to store the checks in the order of the report
+	private final List<Check> checks = new ArrayList<Check>();
+	//Number of errors and failures reported by the checks applied so far
+	private int errorCount = 0;
+
+	public CheckScheduler(int threads, RepairJournal journal, ReportSink report)
+	{
+		this.threads = Math.max(threads, 1);
+		this.journal = journal;
+		this.report = report;
+	}
+
+	public void add(Check check)
+	{
+		checks.add(check);
+	}
+
+	/*
+	 * Method to run all the checks added, returns once every check has been applied
+	 */
+	public void run()
+	{
+		int count = checks.size();
+		List<Future<Findings>> detections = new ArrayList<Future<Findings>>(count);
+		//Time spent in the detection of each check, set by the detecting thread before its findings are handed out
+		final long[] detectionNanos = new long[count];
+		for (int i = 0; i < count; i++)
+		{
+			detections.add(null);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			for (int applied = 0; applied < count; applied++)
+			{
+				//Start every check which does not wait for the repairs of a check not applied yet, the check to apply next is always one of them
+				for (int i = applied; i < count; i++)
+				{
+					if (detections.get(i) == null && isReady(i, applied))
+					{
+						final Check check = checks.get(i);
+						final int position = i;
+						detections.set(i, executor.submit(() -> {
+							long start = System.nanoTime();
+							Findings findings = detect(check);
+							detectionNanos[position] = System.nanoTime() - start;
+							return findings;
+						}));
+					}
+				}
+				Findings findings = waitFor(detections.get(applied), checks.get(applied));
+				long start = System.nanoTime();
+				findings.apply(report);
+				int errors = findings.getErrorCount();
+				errorCount += errors;
+				if (checks.get(applied).mutates())
+				{
+					commit(checks.get(applied));
+				}
+				long nanos = detectionNanos[applied] + System.nanoTime() - start;
+				report.checkFinished(checks.get(applied).getName(), nanos, errors);
+				Metrics.checkFinished(checks.get(applied).getName(), nanos, errors);
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * Method to get the number of errors and failures reported by the checks, 0 after a run on a consistent file system
+	 */
+	public int getErrorCount()
+	{
+		return errorCount;
+	}
+
+	/*
+	 * Method to find out if the detection of a check can start
+	 * Accepts the position of the check and the number of checks already applied
+	 * Returns false if a check which has not been applied yet comes before it and writes a part of the file system it reads
+	 */
+	private boolean isReady(int position, int applied)
+	{
+		EnumSet<Check.Resource> reads = checks.get(position).getReads();
+		for (int i = applied; i < position; i++)
+		{
+			for (Check.Resource resource : checks.get(i).getWrites())
+			{
+				if (reads.contains(resource))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Findings detect(Check check)
+	{
+		Findings findings = new Findings();
+		try
+		{
+			check.detect(findings);
+		}
+		catch (RuntimeException e)
+		{
+			findings.failure(e);
+		}
+		return findings;
+	}
+
+	private void commit(Check check)
+	{
+		try
+		{
+			journal.commit();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Unable to write the repairs of the check " + check.getName(), e);
+		}
+	}
+
+	private static Findings waitFor(Future<Findings> detection, Check check)
+	{
+		try
+		{
+			return detection.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running the check " + check.getName(), e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Check " + check.getName() + " failed", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,437 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Class Name: DirectoryWalker
+ * Description: Walks the directory tree of the file system from the root directory and fills an InodeGraph with every link found on the way -
+ *              directory entries, file locations and the data blocks of the index blocks.
+ *              Sibling subtrees are independent, so every sub directory is walked by its own fork/join task and the files of a directory are
+ *              read in batches by further tasks, which keeps all the worker threads busy on the disk reads.
+ *              The tasks do not touch the graph, each of them records its links in a private buffer. Once the walk is complete the buffers are
+ *              merged into the graph in the depth first order of the serial walk, so the graph and the report are the same for any number of threads.
+ *              Blocks which could not be read are collected and returned sorted by block number, with ties kept in the walk order.
+ *              An incremental walk is given the link map of an earlier walk and the directories to read again. The links of every other
+ *              directory, and of its files, are copied from the earlier link map without reading any block, its sub directories are still visited.
+ *              walkDirectory reads a single directory and its files without going into its sub directories, on a pool kept until close.
+ *              A walker given a BlockPrefetcher hands it the children of every directory as soon as the directory is tokenized.
+ */
+public class DirectoryWalker {
+
+	//Number of consecutive file entries of a directory which are read by a single task
+	private static final int FILE_BATCH = 32;
+	//Location used for a file inode which has indirect but no location attribute
+	private static final int MISSING_LOCATION = 999999999;
+
+	/*
+	 * Block which could not be read during the walk
+	 */
+	public static class ReadFailure
+	{
+		public final int block;
+		public final IOException cause;
+
+		ReadFailure(int block, IOException cause)
+		{
+			this.block = block;
+			this.cause = cause;
+		}
+	}
+
+	//Variable to store the block store through which the blocks are read
+	private final BlockStore blockStore;
+	//Variable to store the maximum number of blocks in the file system, an index block only holds block numbers below it
+	private final int maxBlocks;
+	//Variable to store the number of worker threads
+	private final int threads;
+	//Link map of an earlier walk and the directories which have to be read again, null for a full walk
+	private InodeGraph previous;
+	private BitSet reparse;
+	//Directories whose blocks were read by the last walk
+	private final BitSet parsed = new BitSet();
+	//Flag to indicate that the sub directories are walked, false for walkDirectory
+	private boolean descend = true;
+	//Pool of walkDirectory, kept from one directory to the next
+	private ForkJoinPool directoryPool;
+	//Variable to store the prefetcher the entries of the directories are handed to, null to read every block when it is needed
+	private final BlockPrefetcher prefetcher;
+
+	public DirectoryWalker(BlockStore blockStore, int maxBlocks, int threads)
+	{
+		this(blockStore, maxBlocks, threads, null);
+	}
+
+	/*
+	 * Constructor for a walker reading ahead
+	 * Accepts the block store, the maximum number of blocks, the number of worker threads and the prefetcher, which may be null
+	 */
+	public DirectoryWalker(BlockStore blockStore, int maxBlocks, int threads, BlockPrefetcher prefetcher)
+	{
+		this.blockStore = blockStore;
+		this.maxBlocks = maxBlocks;
+		this.threads = Math.max(threads, 1);
+		this.prefetcher = prefetcher;
+	}
+
+	/*
+	 * Method to walk the tree below a directory and add all the links found to the graph
+	 * Accepts the block number of the directory and the graph to fill
+	 * Returns the blocks which could not be read, sorted by block number
+	 */
+	public List<ReadFailure> walk(int directory, InodeGraph graph)
+	{
+		return walk(directory, graph, null, null);
+	}
+
+	/*
+	 * Method to walk the tree below a directory reusing the links of an earlier walk
+	 * Accepts the block number of the directory, the graph to fill, which must have been created with the name table of the earlier
+	 * link map, the earlier link map and the directories to read again. Directories which are not in the earlier link map are read as well
+	 * Returns the blocks which could not be read, sorted by block number
+	 */
+	public List<ReadFailure> walk(int directory, InodeGraph graph, InodeGraph previous, BitSet reparse)
+	{
+		this.previous = previous;
+		this.reparse = reparse;
+		descend = true;
+		parsed.clear();
+		DirectoryTask root = new DirectoryTask(directory);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			pool.invoke(root);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return collect(root, graph);
+	}
+
+	/*
+	 * Method to read a single directory and its files, and add their links to the graph - the entries of the directory, and the location
+	 * and index links of its files. The sub directories are not read
+	 * Accepts the block number of the directory and the graph to fill, returns the blocks which could not be read
+	 */
+	public List<ReadFailure> walkDirectory(int directory, InodeGraph graph)
+	{
+		previous = null;
+		reparse = null;
+		descend = false;
+		parsed.clear();
+		if (directoryPool == null)
+		{
+			directoryPool = new ForkJoinPool(threads);
+		}
+		DirectoryTask root = new DirectoryTask(directory);
+		directoryPool.invoke(root);
+		return collect(root, graph);
+	}
+
+	/*
+	 * Method to stop the threads of walkDirectory
+	 */
+	public void close()
+	{
+		if (directoryPool != null)
+		{
+			directoryPool.shutdown();
+			directoryPool = null;
+		}
+	}
+
+	/*
+	 * Method to merge the links of a finished walk into the graph and sort its read failures
+	 */
+	private List<ReadFailure> collect(DirectoryTask root, InodeGraph graph)
+	{
+		List<ReadFailure> failures = new ArrayList<ReadFailure>();
+		merge(root, graph, failures);
+		//The sort is stable, failures of the same block stay in the walk order
+		Collections.sort(failures, new Comparator<ReadFailure>() {
+			public int compare(ReadFailure a, ReadFailure b)
+			{
+				return Integer.compare(a.block, b.block);
+			}
+		});
+		return failures;
+	}
+
+	/*
+	 * Method to get the directories whose blocks were read by the last walk, every directory for a full walk
+	 */
+	public BitSet getParsedDirectories()
+	{
+		return parsed;
+	}
+
+	/*
+	 * Method to add the links of a task and of its sub tasks to the graph in the order of the serial walk
+	 * The output of sub task k is placed right after the first childAt[k] links of the task
+	 */
+	private static void merge(WalkTask task, InodeGraph graph, List<ReadFailure> failures)
+	{
+		failures.addAll(task.failures);
+		int position = 0;
+		for (int k = 0; k <= task.children.size(); k++)
+		{
+			int end = k < task.children.size() ? task.childAt.get(k) : task.links.size() / WalkTask.STRIDE;
+			for (; position < end; position++)
+			{
+				int base = position * WalkTask.STRIDE;
+				int nameStart = task.links.get(base + 2);
+				int nameId;
+				if (nameStart == -1)
+				{
+					nameId = InodeGraph.NAME_BLOCK;
+				}
+				else if (nameStart < -1)
+				{
+					nameId = -2 - nameStart;
+				}
+				else
+				{
+					nameId = graph.internName(task.text, nameStart, task.links.get(base + 3));
+				}
+				graph.addEdge(task.links.get(base), (byte) task.links.get(base + 1), nameId, task.links.get(base + 4));
+			}
+			if (k < task.children.size())
+			{
+				merge(task.children.get(k), graph, failures);
+			}
+		}
+	}
+
+	/*
+	 * Common part of the walk tasks - the private link buffer, the sub tasks and the read failures
+	 * The tasks are never serialized, ForkJoinTask is only Serializable for the sake of other uses
+	 */
+	@SuppressWarnings("serial")
+	private abstract static class WalkTask extends RecursiveAction
+	{
+		//Every link takes five ints in the buffer - parent, type, name start, name end and child. A name start of -1 stands for NAME_BLOCK,
+		//a name start of -2-id for the name identifier id of a link copied from the earlier link map
+		static final int STRIDE = 5;
+
+		//Text of the directory block the entry names point into
+		ByteBuffer text;
+		final IntList links = new IntList(STRIDE * 8);
+		final List<WalkTask> children = new ArrayList<WalkTask>();
+		//Number of links of this task which come before the output of each sub task
+		final IntList childAt = new IntList(4);
+		final List<ReadFailure> failures = new ArrayList<ReadFailure>(0);
+
+		void addLink(int parent, byte type, int nameStart, int nameEnd, int child)
+		{
+			links.add(parent);
+			links.add(type);
+			links.add(nameStart);
+			links.add(nameEnd);
+			links.add(child);
+		}
+
+		void copyLink(int parent, byte type, int nameId, int child)
+		{
+			addLink(parent, type, nameId == InodeGraph.NAME_BLOCK ? -1 : -2 - nameId, -1, child);
+		}
+
+		void addChild(WalkTask child)
+		{
+			childAt.add(links.size() / STRIDE);
+			children.add(child);
+		}
+	}
+
+	/*
+	 * Task reading a directory block, it records the . and .. entries and the directory entries itself and hands the
+	 * sub directories and the files over to sub tasks
+	 */
+	@SuppressWarnings("serial")
+	private class DirectoryTask extends WalkTask
+	{
+		private final int directory;
+
+		DirectoryTask(int directory)
+		{
+			this.directory = directory;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (previous != null && !reparse.get(directory) && previous.childCount(directory) > 0)
+			{
+				copy();
+				invokeAll(children);
+				return;
+			}
+			synchronized (parsed)
+			{
+				parsed.set(directory);
+			}
+			try
+			{
+				//Directory entry example- {size:1033, uid:1000, gid:1000, mode:16877, atime:1323630836, ctime:1323630836, mtime:1529544887, linkcount:1, filename_to_inode_dict: {d:.:26, d:..:26}}
+				text = blockStore.readBlock(directory);
+			}
+			catch (IOException e)
+			{
+				failures.add(new ReadFailure(directory, e));
+				return;
+			}
+
+			BlockTokenizer.tokenize(text, new BlockTokenizer.Handler() {
+				//Batch collecting the consecutive file entries
+				FileTask files;
+
+				public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+				{
+				}
+
+				public void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int block)
+				{
+					if (type != InodeGraph.TYPE_DIRECTORY)
+					{
+						if (files == null || files.count() == FILE_BATCH)
+						{
+							files = new FileTask(directory, text);
+							addChild(files);
+						}
+						files.addFile(nameStart, nameEnd, block);
+						if (prefetcher != null)
+						{
+							prefetcher.prefetchFile(block);
+						}
+						return;
+					}
+
+					files = null;
+					addLink(directory, InodeGraph.TYPE_DIRECTORY, nameStart, nameEnd, block);
+					boolean dots = BlockTokenizer.keyEquals(text, nameStart, nameEnd, ".") || BlockTokenizer.keyEquals(text, nameStart, nameEnd, "..");
+					if (!dots && descend)
+					{
+						addChild(new DirectoryTask(block));
+					}
+					//The sub directories of a streaming walk are read by the next calls of walkDirectory
+					if (!dots && prefetcher != null)
+					{
+						prefetcher.prefetch(block);
+					}
+				}
+			});
+
+			invokeAll(children);
+		}
+
+		/*
+		 * Method to copy the entries of the directory from the earlier link map, each file entry followed by the location and index
+		 * links of the file, which come right after it in the order of the walk
+		 */
+		private void copy()
+		{
+			for (int p = previous.firstEdge(directory); p < previous.endEdge(directory); p++)
+			{
+				int edge = previous.edgeAt(p);
+				int nameId = previous.nameId(edge);
+				if (nameId == InodeGraph.NAME_BLOCK)
+				{
+					continue;
+				}
+				copyLink(directory, previous.type(edge), nameId, previous.child(edge));
+				if (previous.type(edge) == InodeGraph.TYPE_DIRECTORY)
+				{
+					if (nameId != InodeGraph.NAME_CURRENT && nameId != InodeGraph.NAME_PARENT)
+					{
+						addChild(new DirectoryTask(previous.child(edge)));
+					}
+					continue;
+				}
+				for (int f = edge + 1; f < previous.size() && previous.nameId(f) == InodeGraph.NAME_BLOCK; f++)
+				{
+					copyLink(previous.parent(f), InodeGraph.TYPE_FILE, InodeGraph.NAME_BLOCK, previous.child(f));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Task reading the file inodes of a batch of file entries of a directory, and for each of them the location block
+	 * in order to find out whether it is an index block
+	 */
+	@SuppressWarnings("serial")
+	private class FileTask extends WalkTask
+	{
+		private final int directory;
+		//Entries of the batch, three ints per file - name start, name end and inode block
+		private final IntList files = new IntList(FILE_BATCH * 3);
+
+		FileTask(int directory, ByteBuffer text)
+		{
+			this.directory = directory;
+			this.text = text;
+		}
+
+		void addFile(int nameStart, int nameEnd, int block)
+		{
+			files.add(nameStart);
+			files.add(nameEnd);
+			files.add(block);
+		}
+
+		int count()
+		{
+			return files.size() / 3;
+		}
+
+		@Override
+		protected void compute()
+		{
+			InodeRecord inode = new InodeRecord();
+			IntList blockNumbers = new IntList(512);
+			for (int f = 0; f < files.size(); f += 3)
+			{
+				int fileBlock = files.get(f + 2);
+				addLink(directory, InodeGraph.TYPE_FILE, files.get(f), files.get(f + 1), fileBlock);
+				//Block being read, reported in case of a failure
+				int reading = fileBlock;
+				try
+				{
+					// File sample entry -{size:14500, uid:1, gid:1, mode:33261, linkcount:1, atime:1323630836, ctime:1323630836, mtime:1323630836, indirect:1 location:28}
+					inode.parse(blockStore.readBlock(fileBlock));
+					if (!inode.hasIndirect)
+					{
+						continue;
+					}
+					int fileLocation = inode.hasLocation ? (int) inode.location : MISSING_LOCATION;
+					//As file data does not have individual identifier the file block number is the identifier
+					addLink(fileBlock, InodeGraph.TYPE_FILE, -1, -1, fileLocation);
+
+					//The location is an index block if all the items of it are block numbers of the file system, "X, Y, Z"
+					blockNumbers.clear();
+					reading = fileLocation;
+					boolean isIndexBlock = BlockTokenizer.parseBlockList(blockStore.readBlock(fileLocation), blockNumbers) && blockNumbers.size() > 0;
+					for (int k = 0; k < blockNumbers.size() && isIndexBlock; k++)
+					{
+						isIndexBlock = blockNumbers.get(k) < maxBlocks;
+					}
+					for (int k = 0; k < blockNumbers.size() && isIndexBlock; k++)
+					{
+						addLink(fileLocation, InodeGraph.TYPE_FILE, -1, -1, blockNumbers.get(k));
+					}
+				}
+				catch (IOException e)
+				{
+					failures.add(new ReadFailure(reading, e));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package fsck;
+
+/*
+ * Class Name: Finding
+ * Description: One inconsistency found by a check - the id of the check, the block in which it was found, the value the file system
+ *              specification expects, the value actually found and the message of the human readable report.
+ *              The message does not carry the "Error: " prefix, the report sinks add what their format needs.
+ */
+public class Finding {
+
+	//Variable to store the id of the check which found the inconsistency, e.g. free-list
+	public final String check;
+	//Variable to store the block number the inconsistency was found in
+	public final int block;
+	//Variable to store the value expected by the file system specification
+	public final String expected;
+	//Variable to store the value found in the block
+	public final String actual;
+	//Variable to store the message of the human readable report
+	public final String message;
+
+	public Finding(String check, int block, String expected, String actual, String message)
+	{
+		this.check = check;
+		this.block = block;
+		this.expected = expected;
+		this.actual = actual;
+		this.message = message;
+	}
+}
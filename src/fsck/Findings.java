@@ -0,0 +1,106 @@
+package fsck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Class Name: Findings
+ * Description: Buffered output of a check. The detection of a check adds its findings, each with the repair to run for it,
+ *              instead of printing them. apply reports the findings and runs the repairs in the order they were added, so the
+ *              report reads the same as when the checks printed and repaired directly, whichever thread ran the detection.
+ */
+public class Findings {
+
+	//Findings to report, a null finding stands for a repair without a finding of its own
+	private final List<Finding> findings = new ArrayList<Finding>();
+	//Repair to run after each message, null if there is none
+	private final List<Runnable> repairs = new ArrayList<Runnable>();
+	//Unexpected failures of the detection, printed in their place
+	private final List<Throwable> failures = new ArrayList<Throwable>();
+
+	/*
+	 * Method to record an error which has no repair
+	 */
+	public void error(Finding finding)
+	{
+		error(finding, null);
+	}
+
+	/*
+	 * Method to record an error and the repair which fixes it
+	 */
+	public void error(Finding finding, Runnable repair)
+	{
+		findings.add(finding);
+		repairs.add(repair);
+		failures.add(null);
+	}
+
+	/*
+	 * Method to record a repair which is not the result of an error, e.g. publishing a rebuilt link map
+	 */
+	public void repair(Runnable repair)
+	{
+		error(null, repair);
+	}
+
+	/*
+	 * Method to record an exception of the detection, e.g. a block which could not be read
+	 */
+	public void failure(Throwable failure)
+	{
+		findings.add(null);
+		repairs.add(null);
+		failures.add(failure);
+	}
+
+	public boolean isEmpty()
+	{
+		return findings.isEmpty();
+	}
+
+	/*
+	 * Method to get the number of errors and failures recorded, the repairs without a finding of their own are not counted
+	 */
+	public int getErrorCount()
+	{
+		int count = 0;
+		for (int i = 0; i < findings.size(); i++)
+		{
+			if (findings.get(i) != null || failures.get(i) != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Method to report the findings to the sink and run the repairs in the order in which they were recorded
+	 * Must be called from one thread at a time, as the repairs rewrite the blocks
+	 */
+	public void apply(ReportSink report)
+	{
+		for (int i = 0; i < findings.size(); i++)
+		{
+			if (failures.get(i) != null)
+			{
+				report.failure(failures.get(i));
+				continue;
+			}
+			if (findings.get(i) != null)
+			{
+				report.error(findings.get(i));
+			}
+			if (repairs.get(i) != null)
+			{
+				repairs.get(i).run();
+				if (findings.get(i) != null)
+				{
+					report.repaired();
+					Metrics.repaired();
+				}
+			}
+		}
+	}
+}
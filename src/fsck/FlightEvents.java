@@ -0,0 +1,111 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * Class Name: FlightEvents
+ * Description: JFR events of csefsck and the flight recording they are written to, used by Metrics once a recording is started.
+ *              The events are committed after the block read or the check they describe, with its time as a field of the event,
+ *              so that no event object exists while nothing is recorded.
+ */
+final class FlightEvents {
+
+	//Flight recording of the run, null if there is none
+	private static Recording recording;
+
+	/*
+	 * JFR event of a block read from the disk, cache hits are not reported
+	 */
+	@Name("fsck.BlockRead")
+	@Label("Block Read")
+	@Category("csefsck")
+	@Description("Block of the file system image read from the disk")
+	@StackTrace(false)
+	static class BlockReadEvent extends Event
+	{
+		@Label("Block")
+		int block;
+
+		@Label("Size")
+		@DataAmount
+		int bytes;
+
+		@Label("Read Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+	}
+
+	/*
+	 * JFR event of a check, reported once for each run of the detection and the application of its findings
+	 */
+	@Name("fsck.Check")
+	@Label("Check")
+	@Category("csefsck")
+	@Description("Time spent in a consistency check")
+	@StackTrace(false)
+	static class CheckEvent extends Event
+	{
+		@Label("Check")
+		String check;
+
+		@Label("Check Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+
+		@Label("Findings")
+		int findings;
+	}
+
+	private FlightEvents()
+	{
+	}
+
+	static void startRecording(Path file) throws IOException
+	{
+		recording = new Recording();
+		recording.setName("csefsck");
+		recording.enable(BlockReadEvent.class);
+		recording.enable(CheckEvent.class);
+		recording.setDestination(file);
+		recording.start();
+	}
+
+	/*
+	 * Method to stop the recording and write it to its file
+	 */
+	static void stopRecording()
+	{
+		recording.stop();
+		recording.close();
+		recording = null;
+	}
+
+	static void blockRead(int block, int bytes, long nanos)
+	{
+		BlockReadEvent event = new BlockReadEvent();
+		event.block = block;
+		event.bytes = bytes;
+		event.time = nanos;
+		event.commit();
+	}
+
+	static void check(String check, long nanos, int findings)
+	{
+		CheckEvent event = new CheckEvent();
+		event.check = check;
+		event.time = nanos;
+		event.findings = findings;
+		event.commit();
+	}
+}
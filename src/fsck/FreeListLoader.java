@@ -0,0 +1,155 @@
+package fsck;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/*
+ * Class Name: FreeListLoader
+ * Description: Reads the free block list into a bitmap of the listed blocks, one task per free block list block on a fork/join pool.
+ *              Free block list block freeStart+k holds the block numbers from k*blocksPerList on (400 per block), the last block holds the rest
+ *              up to maxBlocks. Every task marks the numbers of its block in a bitmap of that range only, so the tasks share nothing and
+ *              take no lock; the ranges are then copied into the bitmap of the whole file system a word at a time.
+ *              A number listed in a block whose range does not hold it is not marked, it is kept as misplaced for the check to report,
+ *              along with the blocks which could not be read. Both are kept by free block list block, so they are reported in the same
+ *              order whatever the number of threads.
+ */
+public class FreeListLoader {
+
+	//Variable to store the store from which the free block list blocks are read
+	private final BlockStore blockStore;
+	//Variables to store the maximum number of blocks and the first and the last block holding the free block list
+	private final int maxBlocks;
+	private final int freeStart;
+	private final int freeEnd;
+	//Variable to store the number of block numbers each free block list block holds
+	private final int blocksPerList;
+
+	//Block numbers outside the range of their block and read failures, by free block list block, null where there is none
+	private final IntList[] misplaced;
+	private final IOException[] failures;
+
+	public FreeListLoader(BlockStore blockStore, int maxBlocks, int freeStart, int freeEnd, int blocksPerList)
+	{
+		this.blockStore = blockStore;
+		this.maxBlocks = maxBlocks;
+		this.freeStart = freeStart;
+		this.freeEnd = freeEnd;
+		this.blocksPerList = blocksPerList;
+		this.misplaced = new IntList[Math.max(freeEnd - freeStart + 1, 0)];
+		this.failures = new IOException[misplaced.length];
+	}
+
+	/*
+	 * Method to read the free block list on the given number of threads
+	 * Returns the bitmap of the block numbers listed in the block whose range holds them
+	 */
+	public BitSet load(int threads)
+	{
+		BitSet[] ranges = new BitSet[misplaced.length];
+		if (threads <= 1 || ranges.length <= 1)
+		{
+			for (int k = 0; k < ranges.length; k++)
+			{
+				ranges[k] = loadBlock(k);
+			}
+		}
+		else
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				pool.submit(() -> IntStream.range(0, ranges.length).parallel().forEach(k -> ranges[k] = loadBlock(k))).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while reading the free block list", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException(e.getCause());
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+
+		//Copying each range to its place, the ranges are not aligned on words so each word of a range is split over two words
+		long[] words = new long[(maxBlocks + 63) >>> 6];
+		for (int k = 0; k < ranges.length; k++)
+		{
+			int from = firstBlock(k);
+			int shift = from & 63;
+			long[] range = ranges[k].toLongArray();
+			for (int w = 0; w < range.length; w++)
+			{
+				int word = (from >>> 6) + w;
+				words[word] |= range[w] << shift;
+				if (shift != 0 && word + 1 < words.length)
+				{
+					words[word + 1] |= range[w] >>> (64 - shift);
+				}
+			}
+		}
+		return BitSet.valueOf(words);
+	}
+
+	/*
+	 * Method to read a free block list block into the bitmap of its range
+	 * Accepts the position of the block in the free block list, from 0
+	 */
+	private BitSet loadBlock(int k)
+	{
+		int from = firstBlock(k);
+		int to = k == misplaced.length - 1 ? maxBlocks : Math.min(from + blocksPerList, maxBlocks);
+		BitSet range = new BitSet(Math.max(to - from, 0));
+		IntList outside = new IntList();
+		try
+		{
+			//free space list format - “X, Y, Z” to indicate that X, Y and Z are in the list
+			BlockTokenizer.markBlockList(blockStore.readBlock(freeStart + k), range, from, Math.max(to, from), outside);
+		}
+		catch (IOException e)
+		{
+			failures[k] = e;
+		}
+		misplaced[k] = outside.size() > 0 ? outside : null;
+		return range;
+	}
+
+	/*
+	 * Method to get the first block number held by a free block list block
+	 */
+	private int firstBlock(int k)
+	{
+		return (int) Math.min((long) k * blocksPerList, maxBlocks);
+	}
+
+	/*
+	 * Method to get the free block list block which is to hold a block number, the last block for the numbers beyond the others
+	 */
+	public int listBlockOf(int blockNumber)
+	{
+		return (int) Math.min(freeStart + (long) blockNumber / blocksPerList, freeEnd);
+	}
+
+	/*
+	 * Method to get the block numbers listed outside the range of a free block list block, in the order they are listed, or null
+	 */
+	public IntList getMisplaced(int listBlock)
+	{
+		return misplaced[listBlock - freeStart];
+	}
+
+	/*
+	 * Method to get the failure to read a free block list block, or null if it was read
+	 */
+	public IOException getFailure(int listBlock)
+	{
+		return failures[listBlock - freeStart];
+	}
+}
@@ -0,0 +1,180 @@
+package fsck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.TreeMap;
+
+/*
+ * Class Name: FreeListRepair
+ * Description: Change set of the free block list. The fixes of the free block list check only record here the block numbers to remove
+ *              from the list and the block numbers to add to each free block list block. commit then plans the rewrite of every affected
+ *              free block list block once in the RepairJournal, instead of rewriting a block for every inconsistent block number.
+ *              The rest of the text of a rewritten block is kept as it was - a removed item is dropped along with the separator before it,
+ *              added items are appended after the last item as ", N".
+ */
+public class FreeListRepair {
+
+	//Variable to store the journal through which the free block list is read and rewritten
+	private final RepairJournal journal;
+	//Variables to store the first and the last block holding the free block list
+	private final int freeStart;
+	private final int freeEnd;
+
+	//Block numbers to remove from the free block list, wherever they are listed
+	private final BitSet removed = new BitSet();
+	//Block numbers to add, by free block list block, the blocks are rewritten in ascending order
+	private final TreeMap<Integer, IntList> added = new TreeMap<Integer, IntList>();
+
+	//Variables to store the outcome of the commit
+	private int blocksWritten = 0;
+	private long bytesWritten = 0;
+
+	public FreeListRepair(RepairJournal journal, int freeStart, int freeEnd)
+	{
+		this.journal = journal;
+		this.freeStart = freeStart;
+		this.freeEnd = freeEnd;
+	}
+
+	/*
+	 * Method to record a block number which is to be removed from the free block list
+	 */
+	public void remove(int blockNumber)
+	{
+		removed.set(blockNumber);
+	}
+
+	/*
+	 * Method to record a block number which is to be added to a free block list block
+	 * Accepts the block number and the free block list block, which is kept between the first and the last free block list block
+	 */
+	public void add(int blockNumber, int freeListBlock)
+	{
+		int target = Math.min(Math.max(freeListBlock, freeStart), freeEnd);
+		IntList blocks = added.get(target);
+		if (blocks == null)
+		{
+			blocks = new IntList();
+			added.put(target, blocks);
+		}
+		blocks.add(blockNumber);
+	}
+
+	public boolean isEmpty()
+	{
+		return removed.isEmpty() && added.isEmpty();
+	}
+
+	/*
+	 * Method to plan the rewrite of the free block list blocks affected by the recorded changes in the journal, each of them once
+	 * Does not return any value, the number of blocks and bytes to write are available from getBlocksWritten and getBytesWritten
+	 */
+	public void commit() throws IOException
+	{
+		for (int block = freeStart; block <= freeEnd; block++)
+		{
+			IntList blockAdditions = added.get(block);
+			if (removed.isEmpty() && blockAdditions == null)
+			{
+				continue;
+			}
+			ByteBuffer text = journal.read(block);
+			byte[] content = rewrite(text, blockAdditions);
+			if (content != null)
+			{
+				journal.write(block, content);
+				blocksWritten++;
+				bytesWritten += content.length;
+			}
+		}
+		removed.clear();
+		added.clear();
+	}
+
+	public int getBlocksWritten()
+	{
+		return blocksWritten;
+	}
+
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/*
+	 * Method to build the new content of a free block list block
+	 * Accepts the current text of the block and the block numbers to append to it (may be null)
+	 * Returns the new content, or null if the block does not change
+	 */
+	private byte[] rewrite(ByteBuffer text, IntList additions)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(text.remaining() + 16);
+		boolean changed = additions != null;
+		boolean itemWritten = false;
+		int length = text.limit();
+		int i = text.position();
+		while (i < length)
+		{
+			//Separator run before the item, e.g. ", "
+			int separatorStart = i;
+			while (i < length && isSeparator(text.get(i)))
+			{
+				i++;
+			}
+			if (i == length)
+			{
+				//Trailing separators and white space, the additions go before them
+				writeAdditions(out, additions, itemWritten);
+				write(out, text, separatorStart, length);
+				return changed ? out.toByteArray() : null;
+			}
+
+			int itemStart = i;
+			long value = 0;
+			boolean numeric = true;
+			while (i < length && !isSeparator(text.get(i)))
+			{
+				byte c = text.get(i);
+				numeric = numeric && c >= '0' && c <= '9' && value <= Integer.MAX_VALUE;
+				value = value * 10 + (c - '0');
+				i++;
+			}
+			if (numeric && value <= Integer.MAX_VALUE && removed.get((int) value))
+			{
+				changed = true;
+				continue;
+			}
+			//The separator before the first item kept is dropped if the items before it were removed
+			write(out, text, itemWritten || separatorStart == text.position() ? separatorStart : itemStart, i);
+			itemWritten = true;
+		}
+		writeAdditions(out, additions, itemWritten);
+		return changed ? out.toByteArray() : null;
+	}
+
+	private static void writeAdditions(ByteArrayOutputStream out, IntList additions, boolean itemWritten)
+	{
+		for (int k = 0; additions != null && k < additions.size(); k++)
+		{
+			byte[] item = ((itemWritten ? ", " : "") + additions.get(k)).getBytes(StandardCharsets.US_ASCII);
+			out.write(item, 0, item.length);
+			itemWritten = true;
+		}
+	}
+
+	private static void write(ByteArrayOutputStream out, ByteBuffer text, int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			out.write(text.get(i));
+		}
+	}
+
+	private static boolean isSeparator(byte c)
+	{
+		return c == ',' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+}
@@ -0,0 +1,152 @@
+package fsck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Class Name: FsckBatch
+ * Description: Check of many file system images in one JVM, so that the images share the loaded and compiled code instead of
+ *              each paying for the start of a JVM. Every image is checked by an FsckSession of its own on a fixed pool of jobs threads.
+ *              A session reports into a buffer, the report of an image is written out whole once it and all the images before it are
+ *              done, so the output reads in the order of the images whichever session finishes first.
+ *              A session which fails is reported in the report of its image and does not stop the others.
+ */
+public class FsckBatch {
+
+	/********************************* Settings *********************************/
+	//Number of images checked at the same time
+	public int jobs = Runtime.getRuntime().availableProcessors();
+	//Number of threads of each session, many small images are checked faster one thread each
+	public int threads = 1;
+	//Flags passed on to the sessions, see FsckSession
+	public boolean incremental = false;
+	public boolean streaming = false;
+	public boolean lostFound = false;
+	public int prefetchThreads = 0;
+	public long clockSkewSeconds = 0;
+	//Flag to indicate that the reports are written as JSON lines instead of text
+	public boolean json = false;
+
+	//Variable to store the directories of the images in the order of the report
+	private final List<Path> images;
+
+	/*
+	 * Result of the check of one image - its report and whether errors were found
+	 */
+	private static class ImageReport
+	{
+		final byte[] report;
+		final boolean hasErrors;
+
+		ImageReport(byte[] report, boolean hasErrors)
+		{
+			this.report = report;
+			this.hasErrors = hasErrors;
+		}
+	}
+
+	public FsckBatch(List<Path> images)
+	{
+		this.images = images;
+	}
+
+	/*
+	 * Method to check all the images
+	 * Accepts the stream the reports are written to, followed by a line telling how many images have errors
+	 * Returns the number of images in which errors were found
+	 */
+	public int run(OutputStream out) throws IOException
+	{
+		List<Future<ImageReport>> reports = new ArrayList<Future<ImageReport>>(images.size());
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(jobs, 1));
+		int withErrors = 0;
+		try
+		{
+			for (final Path image : images)
+			{
+				reports.add(executor.submit(() -> check(image)));
+			}
+			for (int i = 0; i < reports.size(); i++)
+			{
+				ImageReport report = waitFor(reports.get(i), images.get(i));
+				out.write(report.report);
+				out.flush();
+				if (report.hasErrors)
+				{
+					withErrors++;
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		ReportSink summary = json ? new JsonLinesReportSink(out) : new TextReportSink(out);
+		summary.info(images.size() + " file system images checked, " + withErrors + " with errors");
+		summary.close();
+		return withErrors;
+	}
+
+	/*
+	 * Method to check one image into a report of its own
+	 */
+	private ImageReport check(Path image)
+	{
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+		ReportSink report = json ? new JsonLinesReportSink(buffer, image.toString()) : new TextReportSink(buffer);
+		if (!json)
+		{
+			report.info("File system image " + image);
+		}
+		FsckSession session = new FsckSession(image, report);
+		session.threads = threads;
+		session.incremental = incremental;
+		session.streaming = streaming;
+		session.lostFound = lostFound;
+		session.prefetchThreads = prefetchThreads;
+		session.clockSkewSeconds = clockSkewSeconds;
+		boolean hasErrors;
+		try
+		{
+			hasErrors = session.run() > 0;
+		}
+		catch (Throwable e)
+		{
+			//Any failure, e.g. a StackOverflowError on a directory cycle, only fails its own image
+			report.failure(e);
+			hasErrors = true;
+		}
+		finally
+		{
+			session.reportSummary();
+			report.close();
+		}
+		return new ImageReport(buffer.toByteArray(), hasErrors);
+	}
+
+	private static ImageReport waitFor(Future<ImageReport> report, Path image)
+	{
+		try
+		{
+			return report.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while checking the image " + image, e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IllegalStateException("Check of the image " + image + " failed", e.getCause());
+		}
+	}
+}
@@ -0,0 +1,1642 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+/*
+ * Class Name: FsckSession
+ * Description: Check and repair of the file system image in one directory - the checks of csefsck, which used to be static methods
+ *              working on static fields, as the methods of a session holding the state of its image.
+ *              Any number of sessions can run at the same time in one JVM, each on its own image and with its own report sink,
+ *              so that many images are checked without starting a JVM for each one. A session is run once.
+ *              The directory holds either a file per block or a packed image, fusedata.pack, which is detected when the session opens it.
+ *              The settings below are read when run is called.
+ */
+public class FsckSession {
+
+	/********************************* Constants used in the Program *********************************/
+	//Variable for holding the standard Device Id for the file system
+	static final int stdDeviceId = 20;
+	//Variable to store the common pattern of the file naming of the file blocks
+	static final String basicFileName = "fusedata";
+	//Variable to store the file number of the Super Block
+	static final int superBlockFileNum = 0;
+	//Variable to store maximum block size
+	static final int blockSize=4096;
+	//Variable to store the pointer size
+	static final int pointerSize=10;
+	//Variable to store the number of block numbers of each free block list block, block k+1 holds the blocks 400k to 400k+399
+	static final int freeListBlockEntries=400;
+	//Variable to store the cache capacity of the streaming check, which only needs the blocks of the directory being checked
+	static final long streamingBlockCacheCapacity=4L*1024*1024;
+	//Variable to store the maximum number of blocks read ahead of the directory walk at a time
+	static final int prefetchWindow=256;
+
+	/********************************* Settings *********************************/
+	//Number of threads walking the directory tree and running the checks
+	public int threads = Runtime.getRuntime().availableProcessors();
+	//Flag to indicate that only the blocks changed since the last clean run are to be checked
+	public boolean incremental = false;
+	//Flag to indicate that the directories are checked one at a time without a link map of the whole file system
+	public boolean streaming = false;
+	//Variable to store the maximum heap size in bytes of the decoded block cache
+	public long blockCacheCapacity=64L*1024*1024;
+	//Number of seconds a date time may be ahead of the clock of this machine before it is reported as a future date time
+	public long clockSkewSeconds = 0;
+	//Number of I/O threads reading the children of the directories ahead of the walk, 0 to read every block when it is needed
+	public int prefetchThreads = 0;
+	//Flag to indicate that the orphaned inodes found by the free block list check are reattached under the lost+found directory of the root
+	public boolean lostFound = false;
+
+	/********************************* Super Block Related Variables *********************************/
+	//Variable to store the directory holding the file system image
+	private final Path imageDirectory;
+	//Variable to store the maximum number of blocks possible in the file system
+	private int maxBlocks = 0;
+	//Variable to store starting block number of the free list 
+	private int freeStart = 0;
+	//Variable to store ending block number of the free list
+	private int freeEnd = 0;
+	//Variable to store the file block number of the root directory
+	private int root = 0;
+	//Variable to store the file device id
+	private int deviceId=0;
+
+	/********************************* Operational Variables *********************************/
+	//Graph to store the directory level mapping of all the directories in the file system
+	//Every link holds the parent block number, the block type - f or d, the block name/identifier and the actual block number
+	private InodeGraph directoryLinkList = new InodeGraph();
+	//Array to store the block numbers of all the directories in the file system
+	private int[] directoryList = new int[0];
+	//Flag to indicate that there is a device ID inconsistency
+	private boolean isDeviceIDInconsistent=false;
+	//Block store through which all the blocks of the file system are read
+	private BlockStore blockStore;
+	//Journal through which all the repairs rewrite the blocks
+	private RepairJournal repairJournal;
+	//Validator of the date times, holding the current time taken when the session was opened
+	private TimestampValidator timestamps;
+	//Prefetcher of the directory walks, created by the first walk when prefetchThreads is set
+	private BlockPrefetcher prefetcher;
+	//Sink to which the findings, the messages and the summary of the run are reported
+	private final ReportSink report;
+
+	/*
+	 * Constructor for the session
+	 * Accepts the directory holding the fusedata.N blocks of the image and the sink to report to, which the caller closes
+	 */
+	public FsckSession(Path imageDirectory, ReportSink report)
+	{
+		this.imageDirectory = imageDirectory.toAbsolutePath();
+		this.report = report;
+	}
+
+	/*
+	 * Method to check and repair the file system of the image with the settings of the session
+	 * Returns the number of errors found, 0 for a consistent file system
+	 */
+	public int run() throws IOException
+	{
+		try
+		{
+			return checkFileSystem();
+		}
+		finally
+		{
+			if (prefetcher != null)
+			{
+				prefetcher.close();
+			}
+			if (blockStore != null)
+			{
+				blockStore.close();
+			}
+		}
+	}
+
+	/*
+	 * Method to report the summary of the session, the last record of its report
+	 * Called by the owner of the report once run has returned or failed
+	 */
+	public void reportSummary()
+	{
+		if (blockStore != null)
+		{
+			report.summary(blockStore.getBlocksRead(), blockStore.getBytesRead());
+		}
+	}
+
+	/*
+	 * Method to open the block store and the repair journal of the image, called by run
+	 * The image is read from its pack when the directory holds a packed image, and the current time of the date time checks is taken
+	 * Does not accept or return any value
+	 */
+	public void open() throws IOException
+	{
+		timestamps = TimestampValidator.now(clockSkewSeconds);
+		blockStore = BlockStore.open(imageDirectory, basicFileName, blockSize, streaming ? streamingBlockCacheCapacity : blockCacheCapacity);
+		repairJournal = new RepairJournal(blockStore, journalFile());
+	}
+
+	/*
+	 * Method to create a walker of the directory tree of the image, reading ahead when prefetchThreads is set
+	 * The super block must have been read first
+	 */
+	private DirectoryWalker newWalker()
+	{
+		if (prefetcher == null && prefetchThreads > 0)
+		{
+			prefetcher = new BlockPrefetcher(blockStore, maxBlocks, prefetchThreads, prefetchWindow);
+		}
+		return new DirectoryWalker(blockStore, maxBlocks, threads, prefetcher);
+	}
+
+	/*
+	 * Method to read the super block and keep its layout - maxBlocks, freeStart, freeEnd and root - for the checks
+	 * Returns the parsed super block, the image must be opened first
+	 */
+	public Superblock readSuperblock() throws IOException
+	{
+		//Tokenize the super block into the primitive fields of the Superblock
+		//Super Block format: {creationTime: 1429434844, mounted: 5, devId:20, freeStart:1, freeEnd:25, root:26, maxBlocks:10000}
+		Superblock superblock = new Superblock().parse(blockStore.readBlock(superBlockFileNum));
+		maxBlocks = superblock.maxBlocks;
+		freeStart = superblock.freeStart;
+		freeEnd = superblock.freeEnd;
+		root = superblock.root;
+		return superblock;
+	}
+
+	/*
+	 * Method to set the link map the checks work on and the directory list derived from it, as the walk of run does
+	 * Accepts a frozen link map
+	 */
+	public void setLinkMap(InodeGraph linkMap)
+	{
+		directoryLinkList = linkMap;
+		fetchDistinctDirectories();
+	}
+
+	public BlockStore getBlockStore()
+	{
+		return blockStore;
+	}
+
+	private Path journalFile()
+	{
+		return Paths.get(imageDirectory.toString(), basicFileName + ".journal");
+	}
+
+	/*
+	 * Method to run the checks, see run
+	 */
+	private int checkFileSystem() throws IOException
+	{
+		open();
+
+		// Finish the repairs of a previous run which stopped before all its blocks were rewritten
+		int replayedBlocks = RepairJournal.replay(blockStore, journalFile());
+		if (replayedBlocks > 0)
+		{
+			report.info("Repair journal of a previous run replayed, " + replayedBlocks + " blocks rewritten");
+		}
+		else if (replayedBlocks < 0)
+		{
+			report.info("Incomplete repair journal of a previous run discarded, no block had been rewritten");
+		}
+
+		// Accessing the super block to get the file system details
+		Superblock superblock = readSuperblock();
+		//Number of errors found by the run, a manifest is only saved after a run without any
+		int errorCount = 0;
+		// Perform the CreationTime Future DateTime Check
+		if (superblock.hasCreationTime)
+		{
+			long start = System.nanoTime();
+			Findings superblockFindings = new Findings();
+			futureDateTimeCheck(superblock.creationTime, "creationTime", superBlockFileNum, superblockFindings);
+			superblockFindings.apply(report);
+			errorCount += superblockFindings.getErrorCount();
+			checkFinished("dates", System.nanoTime() - start, superblockFindings.getErrorCount());
+		}
+		// Check if the DeviceID is correct
+		if (superblock.hasDevId)
+		{
+			deviceId = superblock.devId;
+			checkDeviceId(deviceId);
+		}
+		//Fix Device Id inconsistency
+		if(isDeviceIDInconsistent==true)
+		{
+			long start = System.nanoTime();
+			fixInconsistentDeviceId(superBlockFileNum,deviceId) ;
+			repairJournal.commit();
+			report.repaired();
+			Metrics.repaired();
+			errorCount++;
+			checkFinished("device-id", System.nanoTime() - start, 1);
+		}
+
+		// Streaming check - every directory is read, checked and repaired on its own in a single depth first pass
+		if (streaming)
+		{
+			errorCount += streamingCheck();
+			report.info("Block cache statistics: " + blockStore.getHits() + " hits, " + blockStore.getMisses() + " misses");
+			return errorCount;
+		}
+
+		// Incremental check - the blocks are compared with the manifest of the last clean run, only the directories holding
+		// changed blocks are read again and checked, the links of all the others are taken from the manifest
+		Path manifestFile = Paths.get(imageDirectory.toString(), basicFileName + ".manifest");
+		BlockManifest manifest = null;
+		BitSet reparse = null;
+		if (incremental && blockStore.isPacked())
+		{
+			//The manifest is taken of the block files, a pack has none
+			report.info("Incremental check is not supported for a packed image, all the blocks are checked");
+			incremental = false;
+		}
+		if (incremental)
+		{
+			manifest = BlockManifest.load(manifestFile, superblock);
+			if (manifest == null)
+			{
+				report.info("No manifest of a clean run found, all the blocks are checked");
+			}
+			else
+			{
+				BitSet changed = manifest.changedBlocks(imageDirectory, basicFileName, threads);
+				if (changed.get(superBlockFileNum))
+				{
+					report.info("Super block changed since the last clean run, all the blocks are checked");
+					manifest = null;
+				}
+				else if (changed.isEmpty())
+				{
+					report.info("No block changed since the last clean run, " + manifest.getBlockCount() + " blocks unchanged");
+					return errorCount;
+				}
+				else
+				{
+					reparse = manifest.dirtyDirectories(changed);
+					report.info("" + changed.cardinality() + " blocks changed since the last clean run, "
+							+ reparse.cardinality() + " directories to read again");
+				}
+			}
+		}
+		//Link map of the last clean run, null for a full check
+		final InodeGraph previousLinkMap = manifest != null ? manifest.getGraph() : null;
+		if (previousLinkMap != null)
+		{
+			directoryLinkList = new InodeGraph(previousLinkMap);
+		}
+		
+		// Mapping the root with all the child directories details
+		long walkStart = System.nanoTime();
+		Findings walkFindings = new Findings();
+		BitSet parsedDirectories = directoryLinkMap(root, directoryLinkList, previousLinkMap, reparse, walkFindings);
+		walkFindings.apply(report);
+		errorCount += walkFindings.getErrorCount();
+		checkFinished("walk", System.nanoTime() - walkStart, walkFindings.getErrorCount());
+		directoryLinkList.freeze(maxBlocks);
+		
+		/*
+        //Check the mapped data
+		for (int i = 0; i < directoryLinkList.size(); i++) 
+		{
+			System.out.println(directoryLinkList.parent(i) + " " + (char) directoryLinkList.type(i) + " " + directoryLinkList.name(i) + " " + directoryLinkList.child(i));
+		}*/
+		
+		// Fetch the distinct folders in the array directoryList
+		fetchDistinctDirectories();
+
+		//Links of the files checked by the file checks, in an incremental run only the files of the directories read again
+		//and only these directories and their sub directories are checked
+		final InodeGraph fileLinkMap;
+		if (previousLinkMap != null)
+		{
+			directoryList = incrementalDirectories(directoryLinkList, parsedDirectories);
+			fileLinkMap = incrementalFileLinks(directoryLinkList, parsedDirectories);
+		}
+		else
+		{
+			fileLinkMap = directoryLinkList;
+		}
+		//Directories to read again when the link map is built after the directory repairs
+		final BitSet rewalk = new BitSet(maxBlocks);
+		for (int directory : directoryList)
+		{
+			rewalk.set(directory);
+		}
+         
+
+		// The checks below are run by the CheckScheduler, each check declares the parts of the file system it reads and the parts its repairs write.
+		// The detections run in parallel once the repairs of the earlier checks they depend on are applied, the errors are printed and repaired
+		// in the order in which the checks are added. All the checks but the link count check work on the link map of the first walk.
+		final InodeGraph linkMap = directoryLinkList;
+		CheckScheduler scheduler = new CheckScheduler(threads, repairJournal, report);
+
+		// Validate that the free block list is accurate this includes
+        // a.Making sure the free block list contains ALL of the free blocks
+        // b.Make sure than there are no files/directories stored on items listed in the free block list
+		// c.Keeping the blocks of the inodes which are not reachable from the root, and with lostFound reattaching them under lost+found
+		scheduler.add(new Check("free-list", EnumSet.of(Check.Resource.FREE_LIST, Check.Resource.DIRECTORY_ENTRIES, Check.Resource.FILES),
+				lostFound ? EnumSet.of(Check.Resource.FREE_LIST, Check.Resource.DIRECTORY_ENTRIES, Check.Resource.DIRECTORY_ATTRIBUTES)
+						: EnumSet.of(Check.Resource.FREE_LIST)) {
+			public void detect(Findings findings)
+			{
+				checkFreeBlockList(linkMap, maxBlocks, freeStart, freeEnd, root, findings);
+			}
+		});
+
+		// Checking the dates in different directories
+		scheduler.add(new Check("dates", EnumSet.of(Check.Resource.DIRECTORY_ENTRIES, Check.Resource.DIRECTORY_ATTRIBUTES, Check.Resource.FILES),
+				EnumSet.noneOf(Check.Resource.class)) {
+			public void detect(Findings findings)
+			{
+				directoryDateChecks(linkMap, directoryList, findings);
+			}
+		});
+
+		// Each directory contains . and .. and their block numbers are correct
+		scheduler.add(new Check("directory-entries", EnumSet.of(Check.Resource.DIRECTORY_ENTRIES), EnumSet.of(Check.Resource.DIRECTORY_ENTRIES)) {
+			public void detect(Findings findings)
+			{
+				checkCurrentParentDirectory(linkMap, findings);
+			}
+		});
+
+		// Running link map again as there may have been changes due to the check in the checkCurrentParentDirectory check
+		// The new link map is published once all the checks before it are applied
+		scheduler.add(new Check("link-map", EnumSet.of(Check.Resource.DIRECTORY_ENTRIES, Check.Resource.FILES), EnumSet.of(Check.Resource.LINK_MAP)) {
+			public void detect(Findings findings)
+			{
+				final InodeGraph newLinkMap = previousLinkMap != null ? new InodeGraph(previousLinkMap) : new InodeGraph();
+				directoryLinkMap(root, newLinkMap, previousLinkMap, rewalk, findings);
+				newLinkMap.freeze(maxBlocks);
+				findings.repair(() -> directoryLinkList = newLinkMap);
+			}
+		});
+
+		// Each directory’s link count matches the number of links in the filename_to_inode_dict
+		scheduler.add(new Check("link-count", EnumSet.of(Check.Resource.LINK_MAP, Check.Resource.DIRECTORY_ATTRIBUTES),
+				EnumSet.of(Check.Resource.DIRECTORY_ATTRIBUTES)) {
+			public void detect(Findings findings)
+			{
+				checkLinkCount(directoryLinkList, findings);
+			}
+		});
+
+		// If the data contained in a location pointer is an array, that indirect is one
+		// The file links are not changed by the repairs of the directory entries, thus the first link map is used
+		scheduler.add(new Check("indirect", EnumSet.of(Check.Resource.FILES), EnumSet.noneOf(Check.Resource.class)) {
+			public void detect(Findings findings)
+			{
+				checkIndirectIndexPointerCounts(fileLinkMap, findings);
+			}
+		});
+
+		 //That the size is valid for the number of block pointers in the location array. The three possibilities are:
+         //a.    size<blocksize if  indirect=0 and size>0
+         //b.    size<blocksize*length of location array if indirect!=0
+         //c.    size>blocksize*(length of location array-1) if indirect !=0
+		// The parent of a directory entry link is the directory block, which checkFileSize parses as well, so the directories are read too
+		scheduler.add(new Check("file-size", EnumSet.of(Check.Resource.FILES, Check.Resource.DIRECTORY_ENTRIES, Check.Resource.DIRECTORY_ATTRIBUTES),
+				EnumSet.noneOf(Check.Resource.class)) {
+			public void detect(Findings findings)
+			{
+				checkFileSize(fileLinkMap, findings);
+			}
+		});
+
+		scheduler.run();
+		errorCount += scheduler.getErrorCount();
+
+		report.info("Block cache statistics: " + blockStore.getHits() + " hits, " + blockStore.getMisses() + " misses");
+
+		// Save the manifest of a clean run for the next incremental run, the manifest of the last clean run is kept otherwise
+		if (incremental && errorCount == 0)
+		{
+			if (manifest == null)
+			{
+				manifest = BlockManifest.capture(imageDirectory, basicFileName, superblock, directoryLinkList, threads);
+			}
+			else
+			{
+				manifest.setGraph(directoryLinkList);
+			}
+			manifest.save(manifestFile);
+			report.info("Manifest of " + manifest.getBlockCount() + " blocks saved for the next incremental run");
+		}
+		else if (incremental)
+		{
+			report.info("Errors found, the manifest of the last clean run is kept");
+		}
+
+      //Releasing resources
+		directoryLinkList=null;
+		directoryList=null;
+		return errorCount;
+	}
+	
+
+	/*
+	 * Method to check for the valid device Id
+	 * Takes the device Id to be compared as an input parameter
+	 * Does not return any value, reports the error in case the device Id does not comply
+	 */
+	public void checkDeviceId(int deviceId) 
+	{
+        if (deviceId != stdDeviceId) 
+        {
+            report.error(new Finding("device-id", superBlockFileNum, String.valueOf(stdDeviceId), String.valueOf(deviceId),
+            		"Device ID Inconsistency: Device ID is " + deviceId + "; this should be "+stdDeviceId));
+            //Setting the flag to true
+            isDeviceIDInconsistent=true;
+        }
+    }
+	
+	/*
+	 * Method to fix the device Id issue in case there is an inconsistency
+	 * Accepts the block number of the super block, the device Id found in the super block entry
+	 * Does not return any value, plans the fix in the repair journal and prints a message stating the file entry has been fixed.
+	 */
+	public void fixInconsistentDeviceId(int superBlockNumber,int deviceId) 
+	{
+		try {
+			//Replace the devId key value pair with the correct data
+			String superblock = repairJournal.readText(superBlockNumber);
+			repairJournal.writeText(superBlockNumber, superblock.replace("devId:"+deviceId, "devId:"+stdDeviceId));
+			
+			report.info("Device Id reinitialized to standard device ID "+stdDeviceId+" in the super block entry");
+		} 
+		catch (IOException ex) 
+		{
+			report.failure(ex);
+		}
+	}
+	
+	/* 
+	 * Method to format a unix date time ref. Epoch to a human presentable format
+	 * Takes a long format epoch ref. unix time in seconds
+	 * Returns a date time formatted String of the format MM/dd/yyyy HH:mm:ss
+	 */
+	public static String dateFormatter(long unixDateTime) {
+		//Formatted with the shared formatter, the timezone is as per system timezone
+		return TimestampValidator.format(unixDateTime);
+	}
+	
+	/* 
+	 * Method to check if a particular datetime is a future date time or not
+	 * Takes the date time in seconds, the variable name containing the date time and the block number containing the date time
+	 * The date time is compared with the time taken when the session was opened, allowing for the clock skew tolerance
+	 * Does not return any value however adds an error to the findings in case of occurence of a future date time
+	 */
+	public void futureDateTimeCheck(long datetime, String timeVariable, int blockNumber, Findings findings) 
+	{
+		if (timestamps.isFuture(datetime)) {
+			long now = timestamps.getNow();
+			findings.error(new Finding("dates", blockNumber, timeVariable + " <= " + (now + clockSkewSeconds), timeVariable + ":" + datetime,
+					"Date Time Inconsistency: Future Date Time Found in " + basicFileName + "." + blockNumber + " for "
+					+ timeVariable + ":" + dateFormatter(datetime) + "; Current Date Time:"
+					+ dateFormatter(now)));
+		}
+	}
+	
+	
+	/*
+	 * Method to run the future date time check on the atime, ctime and mtime of an inode
+	 * Takes the parsed inode, the block number of the inode and the findings of the check
+	 * Does not return any value, futureDateTimeCheck adds the error in case of any inconsistency
+	 */
+	public void inodeDateChecks(InodeRecord inode, int blockNumber, Findings findings)
+	{
+		if (inode.hasAtime)
+		{
+			futureDateTimeCheck(inode.atime, "atime", blockNumber, findings);
+		}
+		if (inode.hasCtime)
+		{
+			futureDateTimeCheck(inode.ctime, "ctime", blockNumber, findings);
+		}
+		if (inode.hasMtime)
+		{
+			futureDateTimeCheck(inode.mtime, "mtime", blockNumber, findings);
+		}
+	}
+
+	/*
+	 * Method takes the directory list and prints an error in case of any Future date time found in the block entries
+	 * Takes the link map, the array containing the block numbers of the directories and the findings of the check
+	 * This does not return any value however in case of future date being found in any of the directory entry adds an error to the findings
+	 */
+	public void directoryDateChecks(InodeGraph directoryLinkList, int[] directoryList, Findings findings) {
+		// All times are in the past, nothing in the future
+		//Record holding the fields of the inode being checked
+		InodeRecord inodeRecord = new InodeRecord();
+		//Read every directory entry
+		try {
+			for (int directory : directoryList) {
+				//Check the date and time of the directory inode
+				inodeDateChecks(inodeRecord.parse(blockStore.readBlock(directory)), directory, findings);
+
+				for (int p = directoryLinkList.firstEdge(directory); p < directoryLinkList.endEdge(directory); p++)
+				{
+					int i = directoryLinkList.edgeAt(p);
+					if(directoryLinkList.type(i)==InodeGraph.TYPE_FILE)
+					{
+						//Check the date and time of the file inode
+						inodeDateChecks(inodeRecord.parse(blockStore.readBlock(directoryLinkList.child(i))), directoryLinkList.child(i), findings);
+					}
+				}
+
+			}
+		} catch (IOException e) {
+
+			findings.failure(e);
+		}
+
+	}
+	
+	/*
+	 * Method to generate a mapping data structure which contains the parent and the child folders/files details.
+	 * Takes the highest level parent block number, the graph to populate and the findings to which the errors are added.
+	 * Does not return any value however however populates the graph with the details of the blocks
+	 * The sub directories are walked in parallel by the DirectoryWalker on the configured number of threads, the graph
+	 * is filled in the same order as a serial walk. Blocks which could not be read are reported sorted by block number.
+	 */
+	public void directoryLinkMap(int fileNumber, InodeGraph directoryLinkList, Findings findings) 
+	{
+		directoryLinkMap(fileNumber, directoryLinkList, null, null, findings);
+    }
+
+	/*
+	 * Method to generate the mapping data structure reusing the link map of the last clean run
+	 * Takes the highest level parent block number, the graph to populate, the link map of the last clean run or null for a full walk,
+	 * the directories to read again and the findings to which the errors are added
+	 * Returns the directories whose blocks were read, the links of every other directory are copied from the earlier link map
+	 */
+	public BitSet directoryLinkMap(int fileNumber, InodeGraph directoryLinkList, InodeGraph previousLinkList, BitSet reparse, Findings findings)
+	{
+		DirectoryWalker walker = newWalker();
+		for (DirectoryWalker.ReadFailure failure : walker.walk(fileNumber, directoryLinkList, previousLinkList, reparse))
+		{
+			findings.error(new Finding("walk", failure.block, "readable", String.valueOf(failure.cause),
+					"Unable to read block " + basicFileName + "." + failure.block + ": " + failure.cause));
+		}
+		return walker.getParsedDirectories();
+	}
+
+	/*
+	 * Method to check the file system in a single depth first pass, for file systems whose link map does not fit in the memory
+	 * Does not accept any value. Every directory is read with its files into a link map of its own, checked and repaired -
+	 * dates, . and .., link count, indirect and file size - and dropped before the next directory is read. Only the bitmaps of the
+	 * referenced blocks, of the cross-link check and of the visited directories and the sub directories still to visit are kept, no
+	 * value per block. The free block list is checked against the referenced blocks at the end. The errors are reported directory by
+	 * directory instead of check by check
+	 * Returns the number of errors found
+	 */
+	public int streamingCheck()
+	{
+		//Number of errors and failures reported
+		int errorCount = 0;
+		//Bitmap of the blocks the links point to, for the free block list check
+		BitSet referenced = new BitSet(maxBlocks);
+		//Bitmaps of the links to every block, to report the blocks two links point to as they are marked, no owner is kept per block
+		BlockOwnership ownership = newBlockOwnership(maxBlocks, freeStart, freeEnd, false);
+		//Bitmap of the directories already checked, a directory reached a second time is not checked again
+		BitSet visited = new BitSet(maxBlocks);
+		//Stack of the directories to visit - block number, parent block number and entry name in the parent
+		IntList pendingBlocks = new IntList(64);
+		IntList pendingParents = new IntList(64);
+		List<String> pendingNames = new ArrayList<String>();
+		DirectoryWalker walker = newWalker();
+
+		pendingBlocks.add(root);
+		pendingParents.add(root);
+		pendingNames.add(".");
+		try
+		{
+			while (pendingBlocks.size() > 0)
+			{
+				int directory = pendingBlocks.removeLast();
+				int parent = pendingParents.removeLast();
+				String name = pendingNames.remove(pendingNames.size() - 1);
+				if (directory >= 0 && directory < maxBlocks)
+				{
+					if (visited.get(directory))
+					{
+						continue;
+					}
+					visited.set(directory);
+				}
+				directoryList = new int[] { directory };
+
+				// Checks of the entries of the directory, the link map of the directory is read again if they repaired it
+				// The time of each check is added up over the directories, the time of the repairs is not included
+				long start = System.nanoTime();
+				Findings findings = new Findings();
+				InodeGraph directoryLinks = streamDirectory(walker, directory, parent, name, findings);
+				checkFinished("walk", System.nanoTime() - start, findings.getErrorCount());
+				final InodeGraph entryLinks = directoryLinks;
+				final Findings entryFindings = findings;
+				timeCheck("dates", findings, () -> directoryDateChecks(entryLinks, directoryList, entryFindings));
+				timeCheck("directory-entries", findings, () -> checkCurrentParentDirectory(entryLinks, entryFindings));
+				findings.apply(report);
+				errorCount += findings.getErrorCount();
+				if (!repairJournal.isEmpty())
+				{
+					repairJournal.commit();
+					start = System.nanoTime();
+					findings = new Findings();
+					directoryLinks = streamDirectory(walker, directory, parent, name, findings);
+					checkFinished("walk", System.nanoTime() - start, findings.getErrorCount());
+					findings.apply(report);
+					errorCount += findings.getErrorCount();
+				}
+
+				// Checks of the link count and of the files of the directory
+				final InodeGraph fileLinks = directoryLinks;
+				final Findings fileFindings = new Findings();
+				timeCheck("link-count", fileFindings, () -> checkLinkCount(fileLinks, fileFindings));
+				timeCheck("indirect", fileFindings, () -> checkIndirectIndexPointerCounts(fileLinks, fileFindings));
+				timeCheck("file-size", fileFindings, () -> checkFileSize(fileLinks, fileFindings));
+				fileFindings.apply(report);
+				errorCount += fileFindings.getErrorCount();
+				repairJournal.commit();
+
+				// Record the blocks the links point to and add the sub directories to visit in the order of their entries
+				int firstSubdirectory = pendingBlocks.size();
+				final Findings ownerFindings = new Findings();
+				for (int i = directory != parent ? 1 : 0; i < directoryLinks.size(); i++)
+				{
+					int child = directoryLinks.child(i);
+					if (child >= 0 && child < maxBlocks)
+					{
+						referenced.set(child);
+						claimBlock(ownership, directoryLinks, i, ownerFindings);
+					}
+					if (directoryLinks.parent(i) == directory && directoryLinks.type(i) == InodeGraph.TYPE_DIRECTORY
+							&& directoryLinks.nameId(i) != InodeGraph.NAME_CURRENT && directoryLinks.nameId(i) != InodeGraph.NAME_PARENT)
+					{
+						pendingBlocks.add(child);
+						pendingParents.add(directory);
+						pendingNames.add(directoryLinks.name(i));
+					}
+				}
+				ownership.nextDirectory();
+				ownerFindings.apply(report);
+				errorCount += ownerFindings.getErrorCount();
+				reverse(pendingBlocks, firstSubdirectory);
+				reverse(pendingParents, firstSubdirectory);
+				Collections.reverse(pendingNames.subList(firstSubdirectory, pendingNames.size()));
+			}
+		}
+		catch (IOException e)
+		{
+			report.failure(e);
+			errorCount++;
+		}
+		finally
+		{
+			walker.close();
+		}
+
+		// Free block list check against the blocks referenced by all the directories
+		final Findings findings = new Findings();
+		timeCheck("free-list", findings, () -> checkFreeBlockList(referenced, maxBlocks, freeStart, freeEnd, root, findings));
+		findings.apply(report);
+		errorCount += findings.getErrorCount();
+		try
+		{
+			repairJournal.commit();
+		}
+		catch (IOException e)
+		{
+			report.failure(e);
+			errorCount++;
+		}
+		directoryList = null;
+		return errorCount;
+	}
+
+	/*
+	 * Method to read a directory and its files into a link map of their own for the streaming check
+	 * Takes the walker, the block number of the directory, the block number of its parent, the entry name in the parent and the findings
+	 * to which the read errors are added. Returns the link map, its first link is the entry of the parent when the directory is not the root
+	 */
+	public InodeGraph streamDirectory(DirectoryWalker walker, int directory, int parent, String name, Findings findings)
+	{
+		InodeGraph directoryLinks = new InodeGraph();
+		if (directory != parent)
+		{
+			directoryLinks.addEdge(parent, InodeGraph.TYPE_DIRECTORY, directoryLinks.internName(name), directory);
+		}
+		for (DirectoryWalker.ReadFailure failure : walker.walkDirectory(directory, directoryLinks))
+		{
+			findings.error(new Finding("walk", failure.block, "readable", String.valueOf(failure.cause),
+					"Unable to read block " + basicFileName + "." + failure.block + ": " + failure.cause));
+		}
+		directoryLinks.freezeCompact();
+		return directoryLinks;
+	}
+
+	/*
+	 * Method to add the time of a check and the number of its findings to the summary of the report and to the metrics
+	 */
+	public void checkFinished(String check, long nanos, int findings)
+	{
+		report.checkFinished(check, nanos, findings);
+		Metrics.checkFinished(check, nanos, findings);
+	}
+
+	/*
+	 * Method to run the detection of a check of the streaming check and add its time and its findings to the summary of the report
+	 * Accepts the id of the check, the findings the detection adds to and the detection
+	 */
+	private void timeCheck(String check, Findings findings, Runnable detection)
+	{
+		long start = System.nanoTime();
+		int errors = findings.getErrorCount();
+		detection.run();
+		checkFinished(check, System.nanoTime() - start, findings.getErrorCount() - errors);
+	}
+
+	/*
+	 * Method to reverse the values of a list from a position to its end
+	 */
+	private static void reverse(IntList list, int from)
+	{
+		for (int i = from, j = list.size() - 1; i < j; i++, j--)
+		{
+			int value = list.get(i);
+			list.set(i, list.get(j));
+			list.set(j, value);
+		}
+	}
+
+	/*
+	 * Method to get the directories checked by an incremental run - the directories read again and their sub directories, whose .. entry
+	 * may have been changed by a move
+	 * Takes the link map and the directories read again, returns the block numbers in ascending order
+	 */
+	public int[] incrementalDirectories(InodeGraph directoryLinkList, BitSet parsedDirectories)
+	{
+		BitSet directories = new BitSet(maxBlocks);
+		for (int directory = parsedDirectories.nextSetBit(0); directory >= 0; directory = parsedDirectories.nextSetBit(directory + 1))
+		{
+			directories.set(directory);
+			for (int p = directoryLinkList.firstEdge(directory); p < directoryLinkList.endEdge(directory); p++)
+			{
+				int i = directoryLinkList.edgeAt(p);
+				if (directoryLinkList.type(i) == InodeGraph.TYPE_DIRECTORY && directoryLinkList.nameId(i) != InodeGraph.NAME_CURRENT
+						&& directoryLinkList.nameId(i) != InodeGraph.NAME_PARENT && directoryLinkList.childCount(directoryLinkList.child(i)) > 0)
+				{
+					directories.set(directoryLinkList.child(i));
+				}
+			}
+		}
+		return directories.stream().toArray();
+	}
+
+	/*
+	 * Method to get the links checked by the file checks of an incremental run - the file entries of the directories read again,
+	 * each followed by the location and index links of the file
+	 * Takes the link map and the directories read again, returns a frozen graph holding these links in the order of the link map
+	 */
+	public InodeGraph incrementalFileLinks(InodeGraph directoryLinkList, BitSet parsedDirectories)
+	{
+		InodeGraph fileLinks = new InodeGraph(directoryLinkList);
+		boolean inScope = false;
+		for (int i = 0; i < directoryLinkList.size(); i++)
+		{
+			if (directoryLinkList.nameId(i) != InodeGraph.NAME_BLOCK)
+			{
+				inScope = directoryLinkList.type(i) == InodeGraph.TYPE_FILE && parsedDirectories.get(directoryLinkList.parent(i));
+			}
+			if (inScope)
+			{
+				fileLinks.addEdge(directoryLinkList.parent(i), directoryLinkList.type(i), directoryLinkList.nameId(i), directoryLinkList.child(i));
+			}
+		}
+		fileLinks.freeze(maxBlocks);
+		return fileLinks;
+	}
+	
+	/*
+	 *  Method to generate a list of directories available in the file system
+	 *  Does not accept or return  any parameter. 
+	 *  Generates the list of all directories using directoryLinkList as the reference.
+	 *  Populates the array directoryList with the block numbers in ascending order
+	 */
+	public void fetchDistinctDirectories() {
+        directoryList = directoryLinkList.directories();
+    }
+	
+       /*
+        * Method to verify the authenticity of the free block list
+        * Accepts maximum number of blocks in the filesystem, starting block number containing the free block list,
+        * Ending block number containing the free block list, the block number of the root directory and the findings of the check
+        * Does not return any value, however adds any inconsistency in the free block list and its fix to the findings
+        */
+    public void checkFreeBlockList(InodeGraph directoryLinkList, int maxBlocks, int freeStart, int freeEnd, int root, Findings findings) 
+    {
+    	//Bitmap of the blocks which are actually in use - super block, free block list blocks, root and every block a link points to
+    	BitSet referenced = new BitSet(maxBlocks);
+    	//Owner of every block, to report the blocks two links point to in the same pass
+    	BlockOwnership ownership = newBlockOwnership(maxBlocks, freeStart, freeEnd, true);
+
+        // Update the block status using the Directory List
+        //All the blocks which are present in directoryLinkList are pointers hence not free, block numbers outside the file system are not tracked
+        for (int i = 0; i < directoryLinkList.size(); i++) 
+        {
+        	int child = directoryLinkList.child(i);
+        	if (child >= 0 && child < maxBlocks)
+        	{
+        		referenced.set(child);
+        		claimBlock(ownership, directoryLinkList, i, findings);
+        	}
+        }
+        checkFreeBlockList(referenced, maxBlocks, freeStart, freeEnd, root, findings);
+    }
+
+    /*
+     * Method to create the owner map of the blocks, with the super block and the free block list blocks reserved
+     * Accepts the same values as checkFreeBlockList and whether the owner of every block is kept, or only bitmaps for the streaming check
+     */
+    private BlockOwnership newBlockOwnership(int maxBlocks, int freeStart, int freeEnd, boolean keepOwners)
+    {
+    	BlockOwnership ownership = new BlockOwnership(maxBlocks, keepOwners);
+    	ownership.reserve(superBlockFileNum, superBlockFileNum + 1);
+    	ownership.reserve(freeStart, freeEnd + 1);
+    	return ownership;
+    }
+
+    /*
+     * Method to record the block holding a link as the owner of the block the link points to
+     * Accepts the owner map, the link map, the link and the findings, to which the block is added if another block already points to it
+     */
+    private void claimBlock(BlockOwnership ownership, InodeGraph links, int edge, Findings findings)
+    {
+    	int block = links.child(edge);
+    	int owner = links.parent(edge);
+    	boolean directoryEntry = links.nameId(edge) != InodeGraph.NAME_BLOCK;
+    	int previous = ownership.claim(block, owner, directoryEntry);
+    	if (previous != BlockOwnership.UNOWNED)
+    	{
+    		String first = BlockOwnership.describe(previous, false);
+    		String second = BlockOwnership.describe(owner, directoryEntry);
+    		String message = previous == BlockOwnership.RESERVED
+    				? "Block Ownership Error: Block " + block + " holds " + first + " however is pointed to by " + second
+    				: "Block Ownership Error: Block " + block + " is pointed to by " + first + " and by " + second;
+    		findings.error(new Finding("cross-link", block, "one owner", first + " and " + second, message));
+    	}
+    }
+
+    /*
+     * Method to verify the free block list against the bitmap of the blocks the links point to
+     * Accepts the bitmap, which is changed by the method, and the same parameters as checkFreeBlockList above
+     * Does not return any value, however adds any inconsistency in the free block list and its fix to the findings
+     */
+    public void checkFreeBlockList(BitSet referenced, int maxBlocks, int freeStart, int freeEnd, int root, Findings findings)
+    {
+        // Setting the file number for the superblock to filled
+        referenced.set(superBlockFileNum);
+        
+        // Setting the actual status for all the blocks containing the free block list as filled in the block status
+        referenced.set(freeStart, freeEnd + 1);
+        // Setting the file number for the root block as filled
+        referenced.set(root);
+
+        //Change set collecting the fixes of the free block list, written once all the inconsistent blocks are reported
+        final FreeListRepair freeListRepair = new FreeListRepair(repairJournal, freeStart, freeEnd);
+
+        // Update block status as per the free block list data using the free block list file blocks
+        //The free block list blocks are read in parallel, each into the bitmap of the range of block numbers it holds
+        FreeListLoader loader = new FreeListLoader(blockStore, maxBlocks, freeStart, freeEnd, freeListBlockEntries);
+        BitSet listedFree = loader.load(threads);
+
+        //Block numbers listed in a free block list block which does not hold them are removed from it
+        BitSet misplacedSeen = new BitSet();
+        for (int i = freeStart; i <= freeEnd; i++) {
+            if (loader.getFailure(i) != null) {
+                findings.failure(loader.getFailure(i));
+            }
+            IntList misplaced = loader.getMisplaced(i);
+            for (int k = 0; misplaced != null && k < misplaced.size(); k++) {
+                final int blockNum = misplaced.get(k);
+                final int listBlock = loader.listBlockOf(blockNum);
+                final int listedIn = i;
+                //A free block also listed in its own block is added back there, as the removal takes it out of every block
+                final boolean relist = blockNum < maxBlocks && !referenced.get(blockNum) && listedFree.get(blockNum);
+                Runnable repair = null;
+                if (!misplacedSeen.get(blockNum)) {
+                    misplacedSeen.set(blockNum);
+                    repair = () -> {
+                        freeListRepair.remove(blockNum);
+                        if (relist) {
+                            freeListRepair.add(blockNum, listBlock);
+                        }
+                        report.info("Entry for block " + blockNum + " removed from free block list block " + listedIn);
+                    };
+                }
+                if (blockNum >= maxBlocks) {
+                    findings.error(new Finding("free-list", blockNum, "below " + maxBlocks, "listed in block " + i,
+                            "Free Blocks Inconsistency: Block " + blockNum + " is outside the file system however is present in free block list block " + i),
+                            repair);
+                } else {
+                    findings.error(new Finding("free-list", blockNum, "listed in block " + listBlock, "listed in block " + i,
+                            "Free Blocks Inconsistency: Block " + blockNum + " is present in free block list block " + i + " however belongs in block " + listBlock),
+                            repair);
+                }
+            }
+        }
+
+        //Blocks which are neither in use nor listed free are swept for orphaned inodes, whose subtrees are kept instead of being
+        //added to the free block list, as they still hold the data of files cut off the tree
+        boolean orphansReattached = false;
+        BitSet unreached = (BitSet) referenced.clone();
+        unreached.or(listedFree);
+        unreached.flip(0, maxBlocks);
+        if (!unreached.isEmpty()) {
+            OrphanSweep sweep = new OrphanSweep(blockStore, maxBlocks);
+            sweep.sweep(unreached, threads);
+            orphansReattached = checkOrphans(sweep, referenced, listedFree, root, freeListRepair, findings);
+            referenced.or(sweep.getKept());
+        }
+
+        //In ideal circumstances a block is either in use or listed free, never both and never neither
+        //The inconsistent blocks are the complement of referenced XOR listedFree, computed a word at a time in place of the free list bitmap
+        BitSet inconsistent = listedFree;
+        inconsistent.xor(referenced);
+        inconsistent.flip(0, maxBlocks);
+
+        //Reporting the inconsistent blocks in ascending order
+        for (int i = inconsistent.nextSetBit(0); i >= 0; i = inconsistent.nextSetBit(i + 1)) {
+        	final int blockNum = i;
+        	//If the block points to a file/directory however is also present in the free block list
+        	if (referenced.get(i)) 
+        	{
+        		//Fix Free Block Inconsistencies
+        		findings.error(new Finding("free-list", blockNum, "in use", "listed free",
+        				"Free Blocks Inconsistency: Block " + blockNum + " points to a file/directory however is present in free block list"),
+        				() -> fixInconsistentFreeBlockList(freeListRepair, loader, blockNum,true, true));
+        	} 
+        	//If the block is actually free but is not present in the free block list
+        	else 
+        	{
+        		//Fix Free Block Inconsistencies
+        		findings.error(new Finding("free-list", blockNum, "listed free", "not listed",
+        				"Free Blocks Inconsistency: Block " + blockNum  + " does not points to a file/directory however is not present in free block list"),
+        				() -> fixInconsistentFreeBlockList(freeListRepair, loader, blockNum,false, false));
+        	}
+        }
+        if (!inconsistent.isEmpty() || !misplacedSeen.isEmpty() || orphansReattached)
+        {
+        	findings.repair(() -> commitFreeBlockList(freeListRepair));
+        }
+
+    }
+    
+    
+    /*
+     * Method to report the orphaned inodes found by the sweep and, with lostFound, to reattach each of them under lost+found as its repair
+     * Accepts the sweep, the bitmaps of the blocks in use and of the blocks listed free, the block number of the root directory, the change
+     * set of the free block list and the findings. When lost+found has to be created its block is taken from the free blocks and the bitmaps
+     * are changed as they will be after the repair
+     * Returns true if the free block list is changed by the reattachment
+     */
+    private boolean checkOrphans(OrphanSweep sweep, BitSet referenced, BitSet listedFree, int root, FreeListRepair freeListRepair, Findings findings)
+    {
+    	IntList orphans = sweep.getOrphans();
+
+    	//The lost+found directory of the root, created in the first free block after the root if there is none
+    	int lostAndFound = -1;
+    	boolean create = false;
+    	if (lostFound && orphans.size() > 0)
+    	{
+    		lostAndFound = findDirectoryEntry(root, "lost+found", findings);
+    		create = lostAndFound < 0;
+    	}
+    	if (create)
+    	{
+    		lostAndFound = root + 1;
+    		while (lostAndFound < maxBlocks && (referenced.get(lostAndFound) || !listedFree.get(lostAndFound)))
+    		{
+    			lostAndFound++;
+    		}
+    		if (lostAndFound >= maxBlocks)
+    		{
+    			report.info("No free block left for the lost+found directory, the orphaned inodes are not reattached");
+    			lostAndFound = -1;
+    			create = false;
+    		}
+    		else
+    		{
+    			referenced.set(lostAndFound);
+    			listedFree.clear(lostAndFound);
+    		}
+    	}
+
+    	final int target = lostAndFound;
+    	for (int k = 0; k < orphans.size(); k++)
+    	{
+    		final int orphan = orphans.get(k);
+    		final boolean first = create && k == 0;
+    		int size = sweep.getSubtreeSize(k);
+    		String kind = sweep.kind(orphan) == OrphanSweep.DIRECTORY ? "Directory" : "File";
+    		findings.error(new Finding("orphan", orphan, "reachable from the root", "unreachable, " + size + " blocks",
+    				"Orphan Error: " + kind + " inode " + basicFileName + "." + orphan + " is not reachable from the root directory, its "
+    				+ size + " blocks are kept out of the free block list"),
+    				target < 0 ? null : () -> reattachOrphan(sweep, orphan, target, first, root, freeListRepair));
+    	}
+    	return create;
+    }
+
+    /*
+     * Method to find the block number of a sub directory from the entries of a directory
+     * Accepts the block number of the directory, the name of the entry and the findings, to which a read failure is added
+     * Returns the block number of the sub directory, -1 if there is no such entry
+     */
+    private int findDirectoryEntry(int directory, String name, Findings findings)
+    {
+    	final int[] found = { -1 };
+    	try
+    	{
+    		BlockTokenizer.tokenize(blockStore.readBlock(directory), new BlockTokenizer.Handler() {
+    			public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+    			{
+    			}
+
+    			public void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int block)
+    			{
+    				if (found[0] < 0 && type == InodeGraph.TYPE_DIRECTORY && BlockTokenizer.keyEquals(text, nameStart, nameEnd, name))
+    				{
+    					found[0] = block;
+    				}
+    			}
+    		});
+    	}
+    	catch (IOException e)
+    	{
+    		findings.failure(e);
+    	}
+    	return found[0];
+    }
+
+    /*
+     * Method to reattach an orphaned inode under lost+found, as an entry named # and its block number
+     * Accepts the sweep, the block number of the orphan, the block number of lost+found, whether it is to be created with this entry, the block
+     * number of the root directory and the change set of the free block list, from which the block of a new lost+found is removed
+     * Does not return any value however plans the changes of lost+found, of the root and of the .. entry of an orphaned directory
+     */
+    public void reattachOrphan(OrphanSweep sweep, int orphan, int lostAndFound, boolean create, int root, FreeListRepair freeListRepair)
+    {
+    	try
+    	{
+    		boolean directory = sweep.kind(orphan) == OrphanSweep.DIRECTORY;
+    		String entry = (directory ? ", d:#" : ", f:#") + orphan + ":" + orphan;
+    		if (directory)
+    		{
+    			//The .. entry of a reattached directory points to lost+found, a new .. entry is a link of the directory too
+    			int parent = sweep.getParentEntry(orphan);
+    			if (parent >= 0)
+    			{
+    				String blockData = repairJournal.readText(orphan);
+    				repairJournal.writeText(orphan, blockData.replaceAll("\\bd:\\.\\.:" + parent + "\\b", "d:..:" + lostAndFound));
+    			}
+    			else
+    			{
+    				addDirectoryEntries(orphan, ", d:..:" + lostAndFound, 1);
+    			}
+    		}
+
+    		if (create)
+    		{
+    			long now = timestamps.getNow();
+    			repairJournal.writeText(lostAndFound, "{size:" + blockSize + ", uid:1000, gid:1000, mode:16877, atime:" + now + ", ctime:" + now
+    					+ ", mtime:" + now + ", linkcount:3, filename_to_inode_dict: {d:.:" + lostAndFound + ", d:..:" + root + entry + "}}");
+    			addDirectoryEntries(root, ", d:lost+found:" + lostAndFound, 1);
+    			freeListRepair.remove(lostAndFound);
+    			report.info("Directory lost+found created in the block number " + lostAndFound);
+    		}
+    		else
+    		{
+    			addDirectoryEntries(lostAndFound, entry, 1);
+    		}
+    		report.info("Block " + orphan + " reattached as lost+found/#" + orphan);
+    	}
+    	catch (IOException e)
+    	{
+    		report.failure(e);
+    	}
+    }
+
+    /*
+     * Method to append entries to a directory and add their number to its link count
+     * Accepts the block number of the directory, the entries, e.g. ", f:#40:40", and their number
+     */
+    private void addDirectoryEntries(int directory, String entries, int count) throws IOException
+    {
+    	String blockData = repairJournal.readText(directory);
+    	InodeRecord inodeRecord = new InodeRecord().parse(ByteBuffer.wrap(blockData.getBytes(StandardCharsets.ISO_8859_1)));
+    	blockData = appendDirectoryEntry(blockData, entries);
+    	if (inodeRecord.hasLinkcount)
+    	{
+    		blockData = blockData.replaceFirst("\\blinkcount:" + inodeRecord.linkcount + "\\b", "linkcount:" + (inodeRecord.linkcount + count));
+    	}
+    	repairJournal.writeText(directory, blockData);
+    }
+
+    /*
+     * Method to correct the free block list for all the inconsistencies
+     * Accepts the change set of the free block list, the loader of the free block list, which tells the block a block number belongs in, block Number, boolean hasData which indicates if it actually has data and  boolean for if the block is present in the free block list
+     * Records the removal from or the addition to the free block list in the change set, the blocks are rewritten by commitFreeBlockList
+     */
+    public void fixInconsistentFreeBlockList(FreeListRepair freeListRepair, FreeListLoader loader, int blockNum,boolean hasData, boolean isPresentFreeBlkList) 
+    {
+    	//Calculating the block in which the block number to be found, the same block the check of the free block list expects it in
+    	// Free Block List number = freeStart + (block number /entries per free block list block)
+    	int freeBlockListNum=loader.listBlockOf(blockNum);
+
+    	//If the block has data and is also present in the free block list then it needs to be removed from the free block list
+    	//The block number is removed from whichever free block list block it is found in
+    	if(hasData==true && isPresentFreeBlkList==true)
+    	{
+    		freeListRepair.remove(blockNum);
+    		report.info("Entry for block "+blockNum+" removed from the free block list");
+    	}
+    	//In case a block number does not have data and also is not there in the free block list then it needs to be appended in the free block list
+    	else if(hasData==false && isPresentFreeBlkList==false)
+    	{
+    		freeListRepair.add(blockNum, freeBlockListNum);
+    		report.info("Entry for block "+blockNum+" added to the free block list");
+    	}
+
+    }
+
+    /*
+     * Method to plan the changes recorded for the free block list in the repair journal, every affected free block list block is rewritten once
+     * Accepts the change set of the free block list
+     * Does not return any value, prints the number of blocks to rewrite and the number of bytes to write
+     */
+    public void commitFreeBlockList(FreeListRepair freeListRepair)
+    {
+    	try
+    	{
+    		freeListRepair.commit();
+    		report.info("Free block list rewritten: " + freeListRepair.getBlocksWritten() + " blocks, " + freeListRepair.getBytesWritten() + " bytes written");
+    	}
+    	catch (IOException ioe)
+    	{
+    		report.failure(ioe);
+    	}
+    }
+
+    
+    /*
+     * Method to check if the . and .. entries have been added and are as per the requirements for all directories
+     * Does not accept any in parameter
+     * Reads the array directoryList, which contains the list of all directories of the file system and checks for inconsistency
+     * Does not return any value, however if there is any issues in the . and .. entries, then adds the error and its fix to the findings
+     */
+    public void checkCurrentParentDirectory(InodeGraph directoryLinkList, Findings findings) 
+    {
+    	//Taking the list of all the directories in the file system for comparison
+    	for (int directory : directoryList) 
+    	{
+    		//Variable to indicate if the . entry is present for a directory or not
+    		boolean isCurrentDirectoryPresent = false;
+    		//Variable to indicate if the .. entry is present or not
+    		boolean isParentDirectoryPresent = false;
+    		//Variable to indicate if the current directory block number is correct or not
+    		boolean isCurrentDirectoryValid = true;
+    		//Variable to indicate if the Parent directory block number is correct or not
+    		boolean isParentDirectoryValid = true;
+    		//Variable to store the current directory value in case it is found inconsistent
+    		int currentDirectory = 0;
+    		//Variable to store the parent directory value in case it is found inconsistent
+    		int parentDirectory = 0;
+    		//Variable to store the computed parent directory
+    		int actParentDirectory = 0;
+
+    		//Ascertaining the parent details - the parent is the directory which has a named entry pointing to the directory being compared
+    		if (directory == root)
+    		{
+    			actParentDirectory = root;
+    		}
+    		else
+    		{
+    			for (int p = directoryLinkList.firstReference(directory); p < directoryLinkList.endReference(directory); p++)
+    			{
+    				int reference = directoryLinkList.referenceAt(p);
+    				if (directoryLinkList.type(reference) == InodeGraph.TYPE_DIRECTORY
+    						&& directoryLinkList.nameId(reference) != InodeGraph.NAME_CURRENT
+    						&& directoryLinkList.nameId(reference) != InodeGraph.NAME_PARENT)
+    				{
+    					actParentDirectory = directoryLinkList.parent(reference);
+    				}
+    			}
+    		}
+
+    		//Taking the links of the directory being compared
+    		for (int p = directoryLinkList.firstEdge(directory); p < directoryLinkList.endEdge(directory); p++) 
+    		{
+    			int i = directoryLinkList.edgeAt(p);
+    			int linkName = directoryLinkList.nameId(i);
+    			int linkBlock = directoryLinkList.child(i);
+
+    			//Check if the compared directory has a . entry linked to it, if present then the condition is satisfied
+    			if (linkName == InodeGraph.NAME_CURRENT) 
+    			{
+    				isCurrentDirectoryPresent = true;
+
+    				//In case the . entry is available then check if the . entry points to the block number equal to the compared directory block number
+    				//If found then found consistent else found inconsistent
+    				if (linkBlock != directory) 
+    				{
+    					isCurrentDirectoryValid = false;
+    					currentDirectory = linkBlock;
+    				}
+    			}
+
+    			//Check if the compared directory has a .. entry linked to it, if present then the condition is satisfied
+    			if (linkName == InodeGraph.NAME_PARENT) 
+    			{
+    				isParentDirectoryPresent = true;
+
+    				//If the .. entry is found and the block being compared is the root, then the root block number to be present
+    				if (directory == root) 
+    				{
+    					if (linkBlock != root) 
+    					{
+    						isParentDirectoryValid = false;
+    						parentDirectory = linkBlock;
+    					}
+    				} 
+    				//If the block number being compared is not root then check in the links pointing to the block being compared.
+    				// The .. entry should point to the folder which has a pointer to the block being compared
+    				// Other than root block, no directory can have itself as its parent block
+    				else 
+    				{
+    					boolean parentFound = false;
+
+    					for (int r = directoryLinkList.firstReference(directory); r < directoryLinkList.endReference(directory) && linkBlock != directory; r++) 
+    					{
+    						if (directoryLinkList.parent(directoryLinkList.referenceAt(r)) == linkBlock) 
+    						{
+    							parentFound = true;
+    							break;
+    						}
+    					}
+
+    					if (parentFound == false) {
+    						isParentDirectoryValid = false;
+    						parentDirectory = linkBlock;
+    					}
+    				}
+    			}
+    		}
+
+    		//Values used by the fixes, which are run once the check is applied
+    		final int blockNumber = directory;
+    		final int wrongCurrentDirectory = currentDirectory;
+    		final int wrongParentDirectory = parentDirectory;
+    		final int foundParentDirectory = actParentDirectory;
+
+    		//Report error if . entry is not available
+    		if (isCurrentDirectoryPresent == false) {
+    			//Fix the issue by adding the directory details
+    			findings.error(new Finding("directory-entries", directory, "d:.:" + directory, "missing",
+    					"Directory Entry Error: Block " + basicFileName + "." + directory + " does not have \".\" entry"),
+    					() -> addCurrentDirectoryEntry(blockNumber));
+    		}
+
+    		//Report error if .. entry is not available
+    		if (isParentDirectoryPresent == false) {
+    			//Fix the issue by adding directory details
+    			findings.error(new Finding("directory-entries", directory, "d:..:" + actParentDirectory, "missing",
+    					"Directory Entry Error: Block " + basicFileName + "." + directory + " does not have \"..\" entry"),
+    					() -> addParentDirectoryEntry(blockNumber,foundParentDirectory));
+    		}
+
+    		//Report error if . entry does not point to the block number equal to the block number being compared
+    		if (isCurrentDirectoryValid == false) {
+    			//Fix the issue by modifying directory details
+    			findings.error(new Finding("directory-entries", directory, "d:.:" + directory, "d:.:" + currentDirectory,
+    					"Directory Entry Error: Block " + basicFileName + "." + directory + " has a wrong entry for current folder block address of " + currentDirectory),
+    					() -> replaceCurrentDirectoryEntry(blockNumber, wrongCurrentDirectory));
+    		}
+
+    		//Report error if .. entry does not point to the parent block number
+    		if (isParentDirectoryValid == false) {
+    			//Fix the issue by modifying directory details
+    			findings.error(new Finding("directory-entries", directory, "d:..:" + actParentDirectory, "d:..:" + parentDirectory,
+    					"Directory Entry Error: Block " + basicFileName + "." + directory + " has a wrong entry for parent folder block address of " + parentDirectory),
+    					() -> replaceParentDirectoryEntry(blockNumber,  foundParentDirectory, wrongParentDirectory));
+    		}
+    	}
+    }
+
+    /*
+     * Method to add current directory . entry in case it is not present
+     * Accepts the block number which does not have the current directory details
+     * Does not return any value however plans the append of the . entry in the directory represented by the block number in the repair journal
+     */
+	public void addCurrentDirectoryEntry(int blockNumber)
+    {
+		try {
+			//Append the entry in the end of all the directory entries
+	    	repairJournal.writeText(blockNumber, appendDirectoryEntry(repairJournal.readText(blockNumber), ", d:.:"+blockNumber));
+	    	report.info("Current directory details added in the block number "+blockNumber);
+		} 
+		catch (IOException e) 
+		{
+			report.failure(e);
+		}
+    }
+	
+	/*
+     * Method to add parent directory .. entry in case it is not present
+     * Accepts the block number which does not have the parent directory details
+     * Does not return any value however plans the append of the .. entry in the directory represented by the block number in the repair journal
+     */
+	public void addParentDirectoryEntry(int blockNumber,int parentBlockNumber)
+    {
+		try {
+			//Append the entry in the end of all the directory entries
+	    	repairJournal.writeText(blockNumber, appendDirectoryEntry(repairJournal.readText(blockNumber), ", d:..:"+parentBlockNumber));
+	    	report.info("Parent directory details added in the block number "+blockNumber);
+		} 
+		catch (IOException e) 
+		{
+			report.failure(e);
+		}
+    }
+	
+	/*
+	 * Method to append an entry to the filename_to_inode_dict of a directory block
+	 * Takes the text of the directory block and the entry, e.g. ", d:.:26"
+	 * Returns the text with the entry placed before the two closing brackets at the end of the first line
+	 */
+	public static String appendDirectoryEntry(String block, String entry)
+	{
+		int lineEnd = block.indexOf('\n') >= 0 ? block.indexOf('\n') : block.length();
+		return block.substring(0, lineEnd-2) + entry + block.substring(lineEnd-2);
+	}
+	
+	/*
+     * Method to modify current directory . entry in case it is inconsistent
+     * Accepts the block number and the . entry value in the file
+     * Does not return any value however plans the change of the . entry in the directory represented by the block number in the repair journal
+     */
+	public void replaceCurrentDirectoryEntry(int blockNumber, int fileDirectoryValue)
+	{
+		try {
+			//Replace the Current directory block number with the actual current directory number
+			String blockData = repairJournal.readText(blockNumber);
+			repairJournal.writeText(blockNumber, blockData.replaceAll("\\bd:.:"+fileDirectoryValue, "d:.:"+blockNumber));
+
+			report.info("Entry for the . directory has been modified for the block "+blockNumber);
+		}
+		catch (IOException ex) 
+		{
+			report.failure(ex);
+		}
+	}
+
+	/*
+     * Method to modify parent directory .. entry in case it is inconsistent
+     * Accepts the block number, the derived actual parent block number and the .. entry value in the file
+     * Does not return any value however plans the change of the .. entry in the directory represented by the block number in the repair journal
+     */
+	public void replaceParentDirectoryEntry(int blockNumber, int actParentDirectory, int parentDirectory)
+	{
+		try {
+			//Replace the Parent directory block number with the actual Parent directory number
+			String blockData = repairJournal.readText(blockNumber);
+			repairJournal.writeText(blockNumber, blockData.replaceAll("\\bd:..:"+parentDirectory+"\\b", "d:..:"+actParentDirectory));
+
+			report.info("Entry for the .. directory has been modified for the block "+blockNumber+", please run again in case of any inconsistency ");
+		}
+		catch (IOException ex) 
+		{
+			report.failure(ex);
+		}
+	}
+    
+    /*
+     * Method to check if the link counts provided in the directories are equal to the actual folder entries it points to in the inode
+     * Does not accept any parameter, works on the directory list and checks with the values in the folder child map generated for the file system
+     * Does not return any value however adds an error and its fix to the findings in case there crops up any inconsistency between the link counts and the 
+     * actual blocks being pointed to
+     */
+    public void checkLinkCount(InodeGraph directoryLinkList, Findings findings) 
+    {
+    	//Record holding the fields of the directory inode being checked
+    	InodeRecord inodeRecord = new InodeRecord();
+
+    	//Variable to store the link count provided in the directory entry
+        int linkCount = 0;
+        //Variable to store the pointer counts provided in the inode entry
+        int inodeEntriesCount = 0;
+        try {
+        	//Retrieving the "linkcount" number for the directories
+            for (int directory : directoryList) 
+            {
+            	inodeRecord.parse(blockStore.readBlock(directory));
+            	if (inodeRecord.hasLinkcount)
+            	{
+            		linkCount = (int) inodeRecord.linkcount;
+            	}
+
+                //Number of pointers in the inode, taken from the links grouped by the directory block
+                inodeEntriesCount = directoryLinkList.childCount(directory);
+
+                //If the link count is not equal to the number of pointers in the inode then print error on the console
+                if (linkCount != inodeEntriesCount) 
+                {
+                	final int blockNumber = directory;
+                	final int actualLinkedBlocks = inodeEntriesCount;
+                	final int wrongLinkCount = linkCount;
+                    //Fix the link Counts
+                    findings.error(new Finding("link-count", directory, "linkcount:" + inodeEntriesCount, "linkcount:" + linkCount,
+                    		"Directory Entry Error: Link Count Error in the block " + basicFileName
+                            + "." + directory + " linkCount in directory:" + linkCount + " however linked to "
+                            + inodeEntriesCount + " blocks"),
+                            () -> replaceLinkCountEntry(blockNumber, actualLinkedBlocks, wrongLinkCount));
+                }
+            }
+
+        } catch (IOException e) {
+
+            findings.failure(e);
+        }
+
+    }
+    
+    /*
+     * Method to fix the Link Count inconsistency
+     * Aceepts the block number, actual number of inode entries and the link Count provided in the directory entry
+     * Does not return any value however plans the fix of the linkcount to to number of inode entries of the directory in the repair journal
+     */
+    public void replaceLinkCountEntry(int blockNumber, int actualLinkedBlocks, int linkCount)
+	{
+		try {
+			//Updating the link count
+			String blockData = repairJournal.readText(blockNumber);
+			repairJournal.writeText(blockNumber, blockData.replaceAll("\\blinkcount:"+linkCount+"\\b", "linkcount:"+actualLinkedBlocks));
+
+			report.info("Entry for the Link Count has been modified for the block  "+blockNumber);
+		}
+		catch (IOException ex) 
+		{
+			report.failure(ex);
+		}
+	}
+    
+    /*
+     * Method to check if the indirect index value of the file is consistent
+     * Does not accept any parameter, uses the block map to check if indirect index has been correctly set
+     * Does not output any value however adds an error to the findings in case the indirect count is set if there is an indirect index involved
+     */
+    public void checkIndirectIndexPointerCounts(InodeGraph directoryLinkList, Findings findings) 
+    {
+    	//Record holding the fields of the file inode being checked
+    	InodeRecord inodeRecord = new InodeRecord();
+            //variable to store the number of blocks which are indirectly linked
+        int fileBlockCount = 0;
+
+        for (int i = 0; i < directoryLinkList.size(); i++) {
+
+            //If the directory entry is found be a file then go head and ignore the entry
+            if (directoryLinkList.type(i) == InodeGraph.TYPE_FILE) 
+            {
+                //In case the indirect index found, then count the number of indirect files which are linked
+                fileBlockCount = directoryLinkList.childCount(directoryLinkList.child(i));
+
+                //If number of links found more than 0 then check if the indirect variable should be set to 1
+                if (fileBlockCount > 0) 
+                {
+
+                    try {
+                        inodeRecord.parse(blockStore.readBlock(directoryLinkList.child(i)));
+
+                        // If indirect=0 and there are indirect indexing available then output an error
+                        if (inodeRecord.hasIndirect && inodeRecord.indirect == 0) 
+                        {
+                            findings.error(new Finding("indirect", directoryLinkList.parent(i), "indirect:1", "indirect:" + inodeRecord.indirect,
+                            				"File Entry Error: Indirect IndexCount Error: Block "
+                                            + basicFileName + "." + directoryLinkList.parent(i)
+                                            + " has indirect set to "
+                                            + inodeRecord.indirect
+                                            + " however it points to " + fileBlockCount
+                                            + " blocks"));
+                        }
+
+                    } 
+                    catch (IOException e) 
+                    {
+
+                        findings.failure(e);
+                    }
+
+                }
+            }
+        }
+    }
+    
+    /*
+     * Method to check the file size, and if it is as per the file system specifications
+     * Does not accept any parameter, uses the directory link map to check the number of indirect indexes which are present and number of locks indirectly linked
+     * Does not return any value however in case the size is not consistent then adds an error to the findings
+     */
+    public void checkFileSize(InodeGraph directoryLinkList, Findings findings)
+    {
+    	//Record holding the fields of the file inode being checked
+    	InodeRecord inodeRecord = new InodeRecord();
+    	//Variable to store the value of "indirect" provided in the file entry
+    	int indirectCount=0;
+    	//Variable to store the size of the file as provided in the file entry
+    	int size=0;
+    	//Variable to store the number of blocks linked with a file using indirect index block
+    	int indexArraySize=0;
+    	
+    	//Running the check on all the directory map entries which are "f" i.e. file type
+    	for (int i = 0; i < directoryLinkList.size(); i++) 
+    	{
+
+    		if (directoryLinkList.type(i) == InodeGraph.TYPE_FILE) 
+    		{
+    			//Retrieve the size and indirect values for the files
+    			try 
+    			{
+    				indirectCount=0;
+    				size=0;
+    				indexArraySize=0;
+
+    				inodeRecord.parse(blockStore.readBlock(directoryLinkList.parent(i)));
+    				size=(int) inodeRecord.size;
+    				indirectCount=(int) inodeRecord.indirect;
+
+    				//If the indirect value is greater than 0 then check the number of blocks being pointed by the indirect indexes
+    				if(indirectCount>0)
+    				{
+    					indexArraySize=directoryLinkList.childCount(directoryLinkList.child(i));
+    				}
+
+    			} 
+    			catch (IOException e) 
+    			{
+
+    				findings.failure(e);
+    			}
+    			
+    			//If the indirect count is 0 and size is greater than block size then print error
+    			if(indirectCount==0)
+    			{
+    				if(size>blockSize)
+    				{
+    					findings.error(sizeMismatch(directoryLinkList.parent(i), "size <= " + blockSize, size, indirectCount, indexArraySize));
+    				}
+    			}
+    			//If indirect is set to a value not equal to 0 then if the size is lesser than the block size then output error
+    			//If indirect is set to a value not equal to 0 then if the size is not between blocksize*length of location array  and blocksize*(length of location array-1) then output error 
+    			else
+    			{
+    				if(size<blockSize)
+    				{
+    					findings.error(sizeMismatch(directoryLinkList.parent(i), "size >= " + blockSize, size, indirectCount, indexArraySize));
+    				}
+    				else
+    				{
+    					if((size>blockSize*indexArraySize)||(size<blockSize*(indexArraySize-1)))
+    					{
+    						findings.error(sizeMismatch(directoryLinkList.parent(i), "size " + (blockSize*(indexArraySize-1)) + "-" + (blockSize*indexArraySize), size, indirectCount, indexArraySize));
+    					}
+    				}
+    			}
+    		}
+
+    	}
+
+    }
+
+    /*
+     * Method to build the finding of a file whose size does not match its blocks
+     * Accepts the block number reported, the expected size, the size, the indirect value and the number of blocks of the index
+     */
+    private Finding sizeMismatch(int blockNumber, String expected, int size, int indirectCount, int indexArraySize)
+    {
+    	return new Finding("file-size", blockNumber, expected, "size " + size,
+    			"File Entry Error: Size Mismatch for block "+basicFileName + "." + blockNumber+" as size is "+size+" with indirect as "+indirectCount+" and indirect index pointing to "+indexArraySize+" blocks");
+    }
+}
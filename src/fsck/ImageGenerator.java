@@ -0,0 +1,466 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * Class Name: ImageGenerator
+ * Description: Generator of file system images of any size in the text format of the sample image, for scale and stress testing of csefsck.
+ *              Layout - block 0 super block, blocks 1..F free block list (400 block numbers per block, block k+1 lists the free blocks
+ *              of k*400 .. k*400+399), block F+1 the root directory. The directory tree is grown breadth first: every directory gets up
+ *              to filesPerDirectory files and fanout sub directories, down to depth levels below the root, until fill of the blocks are used.
+ *              A file of at most one block is stored directly (indirect:0, the location is the data block), any other file through an
+ *              index block (indirect:1). The data blocks hold a short text rather than the full size of the file, csefsck never reads them.
+ *              Every other block is listed in the free block list. The same seed always gives the same image.
+ *              Corruptions of the chosen kinds are injected into the given fraction of their candidates - directories, files or free blocks,
+ *              the device id when chosen is always corrupted. The injected corruptions are listed in corruptions.txt of the image directory.
+ *              Note that the indirect check of csefsck reports every file stored directly, so the files are only stored directly when asked
+ *              for with --indirect-ratio below 1, or when --file-size allows no file larger than a block.
+ *              Usage: java -cp csefsck.jar fsck.ImageGenerator [options] DIRECTORY, see usage for the options
+ */
+public class ImageGenerator {
+
+	/*
+	 * Kinds of corruption which can be injected, with the name used on the command line
+	 */
+	public enum Corruption
+	{
+		//Device id of the super block other than 20
+		DEVICE_ID("devid"),
+		//Free block missing from the free block list
+		LEAKED_BLOCK("leaked"),
+		//.. entry of a directory pointing to the directory itself
+		BAD_PARENT("parent"),
+		//linkcount of a directory one more than its number of entries
+		LINK_COUNT("linkcount"),
+		//mtime of a file a year in the future
+		FUTURE_MTIME("mtime"),
+		//size of a file one block more than its blocks can hold
+		SIZE_MISMATCH("size");
+
+		private final String option;
+
+		Corruption(String option)
+		{
+			this.option = option;
+		}
+
+		public String getOption()
+		{
+			return option;
+		}
+
+		/*
+		 * Method to find a kind of corruption by its command line name, returns null if there is none
+		 */
+		public static Corruption forOption(String option)
+		{
+			for (Corruption corruption : values())
+			{
+				if (corruption.option.equals(option))
+				{
+					return corruption;
+				}
+			}
+			return null;
+		}
+	}
+
+	//Number of block numbers per free block list block, as in the sample image
+	public static final int FREE_PER_BLOCK = 400;
+	//Standard device id of the file system
+	private static final int DEVICE_ID = 20;
+	//Time stamp of all the blocks, as in the sample image
+	private static final long TIME = 1323630836L;
+	//Number of seconds the future mtime is ahead of the current time
+	private static final long FUTURE_SECONDS = 365L * 24 * 60 * 60;
+	//Name of the file listing the injected corruptions
+	public static final String CORRUPTIONS_FILE = "corruptions.txt";
+
+	private static final String DIRECTORY_INODE = "{size:1033, uid:1000, gid:1000, mode:16877, atime:%d, ctime:%d, mtime:%d, linkcount:%d, filename_to_inode_dict: {%s}}";
+	private static final String FILE_INODE = "{size:%d, uid:1, gid:1, mode:33261, linkcount:1, atime:%d, ctime:%d, mtime:%d, indirect:%d location:%d}";
+
+	/********************************* Generator settings, set before calling generate *********************************/
+	//Number of blocks of the file system
+	public int maxBlocks = 10000;
+	//Fraction of the blocks to use for the directories and files
+	public double fill = 0.75;
+	//Number of directory levels below the root
+	public int depth = 4;
+	//Number of sub directories of each directory
+	public int fanout = 4;
+	//Number of files of each directory
+	public int filesPerDirectory = 20;
+	//Range of the file sizes in bytes, the sizes are uniformly distributed
+	public int minFileSize = 1;
+	public int maxFileSize = 40960;
+	//Fraction of the files stored through an index block, files larger than a block always are. All of them by default, as the
+	//indirect check of csefsck reports every file stored directly, a lower ratio mixes those findings with the injected corruptions
+	public double indirectRatio = 1;
+	//Kinds of corruption to inject and the fraction of their candidates to corrupt
+	public EnumSet<Corruption> corruptions = EnumSet.noneOf(Corruption.class);
+	public double corruptionRate = 0.01;
+	//Seed of the random numbers
+	public long seed = 1;
+
+	//Variable to store the size of a block
+	private final int blockSize;
+	//Directory the image is written to
+	private Path directory;
+	//Random numbers of the tree and of the corruptions, kept apart so that the corruptions do not change the tree
+	private SplittableRandom random;
+	private SplittableRandom corruptionRandom;
+	//Next unused block number
+	private int next;
+	//Last block number which may be used for the tree
+	private int budget;
+	//Injected corruptions, one line per corruption - kind and block
+	private final List<String> injected = new ArrayList<String>();
+
+	public ImageGenerator(int blockSize)
+	{
+		this.blockSize = blockSize;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		ImageGenerator generator = new ImageGenerator(4096);
+		Path target = null;
+		try
+		{
+			for (int i = 0; i < args.length; i++)
+			{
+				String option = args[i];
+				if (!option.startsWith("--"))
+				{
+					if (target != null)
+					{
+						throw new IllegalArgumentException("More than one directory given");
+					}
+					target = Paths.get(option);
+					continue;
+				}
+				if (i + 1 >= args.length)
+				{
+					throw new IllegalArgumentException("Missing value of " + option);
+				}
+				String value = args[++i];
+				switch (option)
+				{
+				case "--blocks":
+					generator.maxBlocks = Integer.parseInt(value);
+					break;
+				case "--fill":
+					generator.fill = Double.parseDouble(value);
+					break;
+				case "--depth":
+					generator.depth = Integer.parseInt(value);
+					break;
+				case "--fanout":
+					generator.fanout = Integer.parseInt(value);
+					break;
+				case "--files":
+					generator.filesPerDirectory = Integer.parseInt(value);
+					break;
+				case "--file-size":
+					int dash = value.indexOf('-');
+					generator.minFileSize = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+					generator.maxFileSize = Integer.parseInt(dash < 0 ? value : value.substring(dash + 1));
+					break;
+				case "--indirect-ratio":
+					generator.indirectRatio = Double.parseDouble(value);
+					break;
+				case "--corrupt":
+					for (String name : value.split(","))
+					{
+						if (name.equals("all"))
+						{
+							generator.corruptions = EnumSet.allOf(Corruption.class);
+						}
+						else if (Corruption.forOption(name) != null)
+						{
+							generator.corruptions.add(Corruption.forOption(name));
+						}
+						else
+						{
+							throw new IllegalArgumentException("Unknown corruption " + name);
+						}
+					}
+					break;
+				case "--rate":
+					generator.corruptionRate = Double.parseDouble(value);
+					break;
+				case "--seed":
+					generator.seed = Long.parseLong(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			}
+			if (target == null)
+			{
+				throw new IllegalArgumentException("No directory given");
+			}
+			generator.validate();
+		}
+		catch (IllegalArgumentException e)
+		{
+			//NumberFormatException is an IllegalArgumentException as well
+			System.out.println("Error: " + e.getMessage() + "; " + usage());
+			return;
+		}
+
+		if (Files.exists(target.resolve("fusedata.0")))
+		{
+			System.out.println("Error: " + target + " already holds a file system image");
+			return;
+		}
+		generator.generate(target);
+		System.out.println("INFO: Image of " + generator.maxBlocks + " blocks written to " + target + ", " + generator.getUsedBlocks() + " blocks used");
+		if (!generator.getCorruptions().isEmpty())
+		{
+			System.out.println("INFO: " + generator.getCorruptions().size() + " corruptions injected, listed in " + target.resolve(CORRUPTIONS_FILE));
+		}
+	}
+
+	/*
+	 * Method to get the command line usage of the generator
+	 */
+	public static String usage()
+	{
+		return "Usage: java fsck.ImageGenerator [--blocks N] [--fill F] [--depth N] [--fanout N] [--files N] [--file-size MIN-MAX]"
+				+ " [--indirect-ratio R] [--corrupt devid,leaked,parent,linkcount,mtime,size|all] [--rate R] [--seed N] DIRECTORY";
+	}
+
+	/*
+	 * Method to check the settings, throws an IllegalArgumentException naming the first invalid setting
+	 */
+	public void validate()
+	{
+		//Every free block list block must hold its 400 block numbers, the root needs the block after the free block list
+		if (maxBlocks < 3 || (maxBlocks + FREE_PER_BLOCK - 1) / FREE_PER_BLOCK + 2 > maxBlocks)
+		{
+			throw new IllegalArgumentException("Invalid number of blocks " + maxBlocks);
+		}
+		if (fill <= 0 || fill > 1)
+		{
+			throw new IllegalArgumentException("Invalid fill " + fill + ", this should be in (0, 1]");
+		}
+		if (depth < 0 || fanout < 0 || filesPerDirectory < 0)
+		{
+			throw new IllegalArgumentException("Invalid tree shape, depth, fanout and files should not be negative");
+		}
+		//An index block holds at most FREE_PER_BLOCK block numbers like the free block list blocks
+		if (minFileSize < 0 || minFileSize > maxFileSize || maxFileSize > FREE_PER_BLOCK * blockSize)
+		{
+			throw new IllegalArgumentException("Invalid file size range " + minFileSize + "-" + maxFileSize);
+		}
+		if (indirectRatio < 0 || indirectRatio > 1 || corruptionRate < 0 || corruptionRate > 1)
+		{
+			throw new IllegalArgumentException("Invalid ratio, this should be in [0, 1]");
+		}
+	}
+
+	/*
+	 * Method to write the image into a directory, existing blocks of the same numbers are overwritten
+	 * Accepts the directory, which is created if needed
+	 */
+	public void generate(Path directory) throws IOException
+	{
+		validate();
+		Files.createDirectories(directory);
+		this.directory = directory;
+		random = new SplittableRandom(seed);
+		corruptionRandom = random.split();
+		injected.clear();
+
+		int freeBlocks = (maxBlocks + FREE_PER_BLOCK - 1) / FREE_PER_BLOCK;
+		int root = freeBlocks + 1;
+		next = root + 1;
+		budget = Math.max(root, (int) Math.min(maxBlocks - 1L, (long) (maxBlocks * fill)));
+
+		int deviceId = DEVICE_ID;
+		if (corruptions.contains(Corruption.DEVICE_ID))
+		{
+			deviceId = DEVICE_ID + 1;
+			record(Corruption.DEVICE_ID, 0);
+		}
+		write(0, "{creationTime: 1429434844, mounted: 5, devId:" + deviceId + ", freeStart:1, freeEnd:" + freeBlocks + ", root:" + root + ", maxBlocks:" + maxBlocks + "}");
+
+		//Directories waiting to be written, three ints each - block, parent and level
+		ArrayDeque<int[]> directories = new ArrayDeque<int[]>();
+		directories.add(new int[] { root, root, 0 });
+		while (!directories.isEmpty())
+		{
+			int[] current = directories.poll();
+			writeDirectory(current[0], current[1], current[2], directories);
+		}
+
+		writeFreeList(freeBlocks);
+
+		if (!injected.isEmpty())
+		{
+			Files.write(directory.resolve(CORRUPTIONS_FILE), injected, StandardCharsets.US_ASCII);
+		}
+	}
+
+	/*
+	 * Method to get the number of blocks used by the image, super block, free block list and tree
+	 */
+	public int getUsedBlocks()
+	{
+		return next;
+	}
+
+	/*
+	 * Method to get the corruptions injected by the last generate, one line per corruption - kind and block number
+	 */
+	public List<String> getCorruptions()
+	{
+		return injected;
+	}
+
+	/*
+	 * Method to write the files of a directory, reserve the blocks of its sub directories and write the directory block
+	 * Accepts the directory block, the parent block, the level below the root and the queue the sub directories are added to
+	 */
+	private void writeDirectory(int block, int parent, int level, ArrayDeque<int[]> directories) throws IOException
+	{
+		StringBuilder entries = new StringBuilder();
+		entries.append("d:.:").append(block);
+		boolean badParent = block != parent && corrupt(Corruption.BAD_PARENT);
+		entries.append(", d:..:").append(badParent ? block : parent);
+		if (badParent)
+		{
+			record(Corruption.BAD_PARENT, block);
+		}
+		int links = 2;
+
+		for (int f = 0; f < filesPerDirectory; f++)
+		{
+			int inode = writeFile();
+			if (inode < 0)
+			{
+				break;
+			}
+			entries.append(", f:f").append(f).append(':').append(inode);
+			links++;
+		}
+
+		for (int d = 0; d < fanout && level < depth && next <= budget; d++)
+		{
+			int subdirectory = next++;
+			directories.add(new int[] { subdirectory, block, level + 1 });
+			entries.append(", d:d").append(d).append(':').append(subdirectory);
+			links++;
+		}
+
+		int linkcount = links;
+		if (corrupt(Corruption.LINK_COUNT))
+		{
+			linkcount++;
+			record(Corruption.LINK_COUNT, block);
+		}
+		write(block, String.format(DIRECTORY_INODE, TIME, TIME, TIME, linkcount, entries));
+	}
+
+	/*
+	 * Method to write a file of a random size - its inode, index block and data blocks
+	 * Returns the inode block number, or -1 if the blocks of the file do not fit in the budget
+	 */
+	private int writeFile() throws IOException
+	{
+		boolean indirect = maxFileSize > blockSize && (minFileSize > blockSize || random.nextDouble() < indirectRatio);
+		int size = indirect ? randomSize(Math.max(minFileSize, blockSize), maxFileSize) : randomSize(minFileSize, Math.min(maxFileSize, blockSize));
+		int dataBlocks = Math.max(1, (size + blockSize - 1) / blockSize);
+		if (next + dataBlocks + (indirect ? 1 : 0) > budget)
+		{
+			return -1;
+		}
+
+		int inode = next++;
+		int location = next;
+		if (indirect)
+		{
+			StringBuilder index = new StringBuilder();
+			for (int b = 1; b <= dataBlocks; b++)
+			{
+				index.append(b == 1 ? "" : ", ").append(location + b);
+			}
+			write(location, index.toString());
+			next++;
+		}
+		for (int b = 0; b < dataBlocks; b++)
+		{
+			int data = next++;
+			write(data, "Data block " + b + " of the file of inode " + inode);
+		}
+
+		if (corrupt(Corruption.SIZE_MISMATCH))
+		{
+			size = dataBlocks * blockSize + blockSize;
+			record(Corruption.SIZE_MISMATCH, inode);
+		}
+		long mtime = TIME;
+		if (corrupt(Corruption.FUTURE_MTIME))
+		{
+			mtime = System.currentTimeMillis() / 1000 + FUTURE_SECONDS;
+			record(Corruption.FUTURE_MTIME, inode);
+		}
+		write(inode, String.format(FILE_INODE, size, TIME, TIME, mtime, indirect ? 1 : 0, location));
+		return inode;
+	}
+
+	/*
+	 * Method to write the free block list, every block from the first unused block on is listed unless it is leaked
+	 */
+	private void writeFreeList(int freeBlocks) throws IOException
+	{
+		StringBuilder free = new StringBuilder();
+		for (int k = 0; k < freeBlocks; k++)
+		{
+			free.setLength(0);
+			for (int b = Math.max(k * FREE_PER_BLOCK, next); b < Math.min((k + 1) * FREE_PER_BLOCK, maxBlocks); b++)
+			{
+				if (corrupt(Corruption.LEAKED_BLOCK))
+				{
+					record(Corruption.LEAKED_BLOCK, b);
+					continue;
+				}
+				free.append(free.length() == 0 ? "" : ", ").append(b);
+			}
+			write(k + 1, free.toString());
+		}
+	}
+
+	private int randomSize(int min, int max)
+	{
+		return min >= max ? min : min + random.nextInt(max - min + 1);
+	}
+
+	/*
+	 * Method to decide whether a candidate of a kind of corruption is corrupted
+	 */
+	private boolean corrupt(Corruption corruption)
+	{
+		return corruptions.contains(corruption) && corruptionRandom.nextDouble() < corruptionRate;
+	}
+
+	private void record(Corruption corruption, int block)
+	{
+		injected.add(corruption.getOption() + " " + block);
+	}
+
+	private void write(int block, String content) throws IOException
+	{
+		Files.write(directory.resolve("fusedata." + block), content.getBytes(StandardCharsets.US_ASCII));
+	}
+}
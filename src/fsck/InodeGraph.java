@@ -0,0 +1,425 @@
+package fsck;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Class Name: InodeGraph
+ * Description: Compact parent to child link structure of the file system, replacing the list of String[1][4] rows.
+ *              Every link (edge) is stored in parallel primitive arrays - parent block number, entry type, interned name and child block number.
+ *              Links are kept in the order in which they were added (depth first order of the directory walk) and, once frozen,
+ *              are also grouped by parent block number in a CSR style layout so that all the links of a block are contiguous,
+ *              and by child block number in a second (reverse) layout so that all the links pointing to a block are contiguous.
+ *              With both layouts every lookup by block number is constant time, the consistency checks are linear in the number of links.
+ *              The links are of three kinds, the same as the rows of the former directoryLinkList
+ *              a. directory entry: parent is the directory block, type d or f, name is the entry name, child is the inode block
+ *              b. file location: parent is the file inode block, type f, name is the inode block number, child is the location block
+ *              c. index entry: parent is the index block, type f, name is the index block number, child is the data block
+ *              As the name of the last two kinds is always the parent block number it is not stored, these links use the NAME_BLOCK identifier.
+ *              A small graph, e.g. the links of a single directory, is frozen with freezeCompact, which groups the links by the distinct block
+ *              numbers present instead of by all the block numbers of the file system, a lookup by block number is then a binary search.
+ */
+public class InodeGraph {
+
+	//Entry types, stored as the same characters which are used in the filename_to_inode_dict
+	public static final byte TYPE_DIRECTORY = 'd';
+	public static final byte TYPE_FILE = 'f';
+
+	//Name identifiers of the . and .. entries, these are interned first so that they have fixed identifiers
+	public static final int NAME_CURRENT = 0;
+	public static final int NAME_PARENT = 1;
+	//Name identifier of the file location and index entry links, the name of these links is the parent block number
+	public static final int NAME_BLOCK = 2;
+
+	//Number of links added to the graph
+	private int edgeCount = 0;
+	//Parallel arrays holding the links in the order they were added
+	private int[] parents = new int[64];
+	private byte[] types = new byte[64];
+	private int[] nameIds = new int[64];
+	private int[] children = new int[64];
+
+	//Name table, every distinct entry name is stored once
+	private String[] names = new String[16];
+	private int[] nameHashes = new int[16];
+	private int nameCount = 0;
+	//Open addressing hash table over the name table, holds name identifier + 1 and 0 for an empty slot
+	private int[] nameSlots = new int[64];
+
+	//CSR layout built by freeze - links of block b are edgeOrder[edgeStart[b]] .. edgeOrder[edgeStart[b+1]-1]
+	private int[] edgeStart;
+	private int[] edgeOrder;
+	//Reverse layout built by freeze - links pointing to block b are referenceOrder[referenceStart[b]] .. referenceOrder[referenceStart[b+1]-1]
+	private int[] referenceStart;
+	private int[] referenceOrder;
+	//Distinct block numbers in ascending order when frozen with freezeCompact, the layouts are then indexed by the position in it
+	private int[] blockIds;
+
+	public InodeGraph()
+	{
+		internName(ByteBuffer.wrap(new byte[] { '.' }), 0, 1);
+		internName(ByteBuffer.wrap(new byte[] { '.', '.' }), 0, 2);
+		//Reserve the identifier of the block number names, it is never returned by internName
+		names[nameCount++] = null;
+	}
+
+	/*
+	 * Constructor for a graph starting with the name table of another graph, so that the name identifiers of the links of the other
+	 * graph are valid in this one and its links can be copied without looking their names up again
+	 */
+	public InodeGraph(InodeGraph other)
+	{
+		names = other.names.clone();
+		nameHashes = other.nameHashes.clone();
+		nameCount = other.nameCount;
+		nameSlots = other.nameSlots.clone();
+	}
+
+	/*
+	 * Method to add a link to the graph
+	 * Accepts the parent block number, the entry type, the name identifier returned by internName (or NAME_BLOCK) and the child block number
+	 * Adding a link discards the grouped layouts, freeze has to be called again before looking up links by block number
+	 */
+	public void addEdge(int parent, byte type, int nameId, int child)
+	{
+		if (edgeCount == parents.length)
+		{
+			int newLength = edgeCount * 2;
+			parents = Arrays.copyOf(parents, newLength);
+			types = Arrays.copyOf(types, newLength);
+			nameIds = Arrays.copyOf(nameIds, newLength);
+			children = Arrays.copyOf(children, newLength);
+		}
+		parents[edgeCount] = parent;
+		types[edgeCount] = type;
+		nameIds[edgeCount] = nameId;
+		children[edgeCount] = child;
+		edgeCount++;
+		edgeStart = null;
+		edgeOrder = null;
+		referenceStart = null;
+		referenceOrder = null;
+	}
+
+	/*
+	 * Method to build the layouts grouping the links by the parent block number and by the child block number
+	 * Accepts the number of blocks in the file system, links to or from a block number outside the file system are left out of the layouts
+	 */
+	public void freeze(int blockCount)
+	{
+		blockIds = null;
+		edgeStart = new int[blockCount + 1];
+		edgeOrder = groupBy(parents, blockCount, edgeStart);
+		referenceStart = new int[blockCount + 1];
+		referenceOrder = groupBy(children, blockCount, referenceStart);
+	}
+
+	/*
+	 * Method to build the layouts grouping the links by the parent block number and by the child block number for a small graph
+	 * The layouts only cover the block numbers present in the links, so their size does not depend on the size of the file system
+	 */
+	public void freezeCompact()
+	{
+		int[] blocks = Arrays.copyOf(parents, edgeCount * 2);
+		System.arraycopy(children, 0, blocks, edgeCount, edgeCount);
+		Arrays.sort(blocks);
+		int distinct = 0;
+		for (int i = 0; i < blocks.length; i++)
+		{
+			if (i == 0 || blocks[i] != blocks[i - 1])
+			{
+				blocks[distinct++] = blocks[i];
+			}
+		}
+		blockIds = Arrays.copyOf(blocks, distinct);
+
+		int[] parentSlots = new int[edgeCount];
+		int[] childSlots = new int[edgeCount];
+		for (int e = 0; e < edgeCount; e++)
+		{
+			parentSlots[e] = Arrays.binarySearch(blockIds, parents[e]);
+			childSlots[e] = Arrays.binarySearch(blockIds, children[e]);
+		}
+		edgeStart = new int[distinct + 1];
+		edgeOrder = groupBy(parentSlots, distinct, edgeStart);
+		referenceStart = new int[distinct + 1];
+		referenceOrder = groupBy(childSlots, distinct, referenceStart);
+	}
+
+	/*
+	 * Method to remove all the links, the name table is kept as the names are likely to be seen again
+	 */
+	public void clear()
+	{
+		edgeCount = 0;
+		blockIds = null;
+		edgeStart = null;
+		edgeOrder = null;
+		referenceStart = null;
+		referenceOrder = null;
+	}
+
+	public int size()
+	{
+		return edgeCount;
+	}
+
+	public int parent(int edge)
+	{
+		return parents[edge];
+	}
+
+	public byte type(int edge)
+	{
+		return types[edge];
+	}
+
+	public int nameId(int edge)
+	{
+		return nameIds[edge];
+	}
+
+	public String name(int edge)
+	{
+		return nameIds[edge] == NAME_BLOCK ? Integer.toString(parents[edge]) : names[nameIds[edge]];
+	}
+
+	public int child(int edge)
+	{
+		return children[edge];
+	}
+
+	/*
+	 * Method to get the position of the first link of a block in the CSR layout
+	 * Accepts the block number, returns the start position which is to be used with edgeAt
+	 */
+	public int firstEdge(int block)
+	{
+		int slot = slot(block);
+		return slot >= 0 ? edgeStart[slot] : 0;
+	}
+
+	/*
+	 * Method to get the position after the last link of a block in the CSR layout
+	 * Accepts the block number, returns the end position (exclusive) which is to be used with edgeAt
+	 */
+	public int endEdge(int block)
+	{
+		int slot = slot(block);
+		return slot >= 0 ? edgeStart[slot + 1] : 0;
+	}
+
+	/*
+	 * Method to get the link stored at a position of the CSR layout
+	 */
+	public int edgeAt(int position)
+	{
+		return edgeOrder[position];
+	}
+
+	/*
+	 * Method to get the number of links going out of a block
+	 */
+	public int childCount(int block)
+	{
+		return endEdge(block) - firstEdge(block);
+	}
+
+	/*
+	 * Method to get the position of the first link pointing to a block in the reverse layout
+	 * Accepts the block number, returns the start position which is to be used with referenceAt
+	 */
+	public int firstReference(int block)
+	{
+		int slot = slot(block);
+		return slot >= 0 ? referenceStart[slot] : 0;
+	}
+
+	/*
+	 * Method to get the position after the last link pointing to a block in the reverse layout
+	 */
+	public int endReference(int block)
+	{
+		int slot = slot(block);
+		return slot >= 0 ? referenceStart[slot + 1] : 0;
+	}
+
+	/*
+	 * Method to get the link stored at a position of the reverse layout
+	 */
+	public int referenceAt(int position)
+	{
+		return referenceOrder[position];
+	}
+
+	/*
+	 * Method to get the distinct block numbers of all the directories in ascending order
+	 * A block is a directory if it has at least one d type link going out of it
+	 */
+	public int[] directories()
+	{
+		checkFrozen();
+		int count = 0;
+		int[] directories = new int[16];
+		for (int b = 0; b < edgeStart.length - 1; b++)
+		{
+			for (int p = edgeStart[b]; p < edgeStart[b + 1]; p++)
+			{
+				if (types[edgeOrder[p]] == TYPE_DIRECTORY)
+				{
+					if (count == directories.length)
+					{
+						directories = Arrays.copyOf(directories, count * 2);
+					}
+					directories[count++] = blockIds == null ? b : blockIds[b];
+					break;
+				}
+			}
+		}
+		return Arrays.copyOf(directories, count);
+	}
+
+	/*
+	 * Method to group the links by a block number column using a stable counting sort, so that the links of a block keep the order in which they were added
+	 * Accepts the column to group by, the number of blocks and the start array to fill, returns the link order
+	 */
+	private int[] groupBy(int[] blocks, int blockCount, int[] start)
+	{
+		int indexed = 0;
+		for (int e = 0; e < edgeCount; e++)
+		{
+			if (blocks[e] >= 0 && blocks[e] < blockCount)
+			{
+				start[blocks[e] + 1]++;
+				indexed++;
+			}
+		}
+		for (int b = 0; b < blockCount; b++)
+		{
+			start[b + 1] += start[b];
+		}
+
+		int[] order = new int[indexed];
+		int[] next = Arrays.copyOf(start, blockCount);
+		for (int e = 0; e < edgeCount; e++)
+		{
+			if (blocks[e] >= 0 && blocks[e] < blockCount)
+			{
+				order[next[blocks[e]]++] = e;
+			}
+		}
+		return order;
+	}
+
+	/*
+	 * Method to get the identifier of an entry name given as a String
+	 */
+	public int internName(String name)
+	{
+		return internName(ByteBuffer.wrap(name.getBytes(StandardCharsets.ISO_8859_1)), 0, name.length());
+	}
+
+	/*
+	 * Method to get the number of names in the name table, the name identifiers are 0 .. nameCount-1
+	 */
+	public int nameCount()
+	{
+		return nameCount;
+	}
+
+	/*
+	 * Method to get a name of the name table by its identifier, null for NAME_BLOCK
+	 */
+	public String nameOf(int nameId)
+	{
+		return names[nameId];
+	}
+
+	/*
+	 * Method to get the identifier of an entry name, the name is the ASCII bytes text[start, end)
+	 * The name is decoded into the name table only the first time it is seen, later lookups do not create any object
+	 */
+	public int internName(ByteBuffer text, int start, int end)
+	{
+		int hash = 0;
+		for (int i = start; i < end; i++)
+		{
+			hash = 31 * hash + (text.get(i) & 0xff);
+		}
+
+		int mask = nameSlots.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (nameSlots[slot] != 0)
+		{
+			int id = nameSlots[slot] - 1;
+			if (nameHashes[id] == hash && BlockTokenizer.keyEquals(text, start, end, names[id]))
+			{
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (nameCount == names.length)
+		{
+			names = Arrays.copyOf(names, nameCount * 2);
+			nameHashes = Arrays.copyOf(nameHashes, nameCount * 2);
+		}
+		int id = nameCount++;
+		byte[] name = new byte[end - start];
+		for (int i = start; i < end; i++)
+		{
+			name[i - start] = text.get(i);
+		}
+		names[id] = new String(name, StandardCharsets.ISO_8859_1);
+		nameHashes[id] = hash;
+		nameSlots[slot] = id + 1;
+		//Keep the table at most half full
+		if (nameCount * 2 > nameSlots.length)
+		{
+			rehashNames();
+		}
+		return id;
+	}
+
+	private void rehashNames()
+	{
+		nameSlots = new int[nameSlots.length * 2];
+		int mask = nameSlots.length - 1;
+		for (int id = 0; id < nameCount; id++)
+		{
+			if (names[id] == null)
+			{
+				continue;
+			}
+			int slot = (nameHashes[id] ^ (nameHashes[id] >>> 16)) & mask;
+			while (nameSlots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			nameSlots[slot] = id + 1;
+		}
+	}
+
+	/*
+	 * Method to get the position of a block in the layouts, -1 if the layouts do not cover it
+	 */
+	private int slot(int block)
+	{
+		checkFrozen();
+		if (blockIds != null)
+		{
+			int position = Arrays.binarySearch(blockIds, block);
+			return position >= 0 ? position : -1;
+		}
+		return block >= 0 && block < edgeStart.length - 1 ? block : -1;
+	}
+
+	private void checkFrozen()
+	{
+		if (edgeOrder == null)
+		{
+			throw new IllegalStateException("InodeGraph must be frozen before it is queried by block");
+		}
+	}
+}
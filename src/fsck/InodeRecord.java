@@ -0,0 +1,102 @@
+package fsck;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name: InodeRecord
+ * Description: Primitive fields of a directory or file inode block, filled by the BlockTokenizer.
+ *              Directory entry example- {size:1033, uid:1000, gid:1000, mode:16877, atime:1323630836, ctime:1323630836, mtime:1529544887, linkcount:1, filename_to_inode_dict: {d:.:26, d:..:26}}
+ *              File entry example- {size:14500, uid:1, gid:1, mode:33261, linkcount:1, atime:1323630836, ctime:1323630836, mtime:1323630836, indirect:1 location:28}
+ *              A record is meant to be reused, parse resets all the fields before reading a block.
+ *              The entries of the filename_to_inode_dict are not kept, callers interested in them handle the entries of the tokenizer themselves.
+ */
+public class InodeRecord implements BlockTokenizer.Handler {
+
+	public long size;
+	public long uid;
+	public long gid;
+	public long mode;
+	public long atime;
+	public long ctime;
+	public long mtime;
+	public long linkcount;
+	public long indirect;
+	public long location;
+
+	//Flags to indicate which of the attributes were present in the block
+	public boolean hasSize;
+	public boolean hasAtime;
+	public boolean hasCtime;
+	public boolean hasMtime;
+	public boolean hasLinkcount;
+	public boolean hasIndirect;
+	public boolean hasLocation;
+
+	/*
+	 * Method to reset the record and fill it from the bytes of a block
+	 */
+	public InodeRecord parse(ByteBuffer block)
+	{
+		reset();
+		BlockTokenizer.tokenize(block, this);
+		return this;
+	}
+
+	public void reset()
+	{
+		size = uid = gid = mode = atime = ctime = mtime = linkcount = indirect = location = 0;
+		hasSize = hasAtime = hasCtime = hasMtime = hasLinkcount = hasIndirect = hasLocation = false;
+	}
+
+	@Override
+	public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+	{
+		if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "size"))
+		{
+			size = value;
+			hasSize = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "uid"))
+		{
+			uid = value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "gid"))
+		{
+			gid = value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "mode"))
+		{
+			mode = value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "atime"))
+		{
+			atime = value;
+			hasAtime = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "ctime"))
+		{
+			ctime = value;
+			hasCtime = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "mtime"))
+		{
+			mtime = value;
+			hasMtime = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "linkcount"))
+		{
+			linkcount = value;
+			hasLinkcount = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "indirect"))
+		{
+			indirect = value;
+			hasIndirect = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "location"))
+		{
+			location = value;
+			hasLocation = true;
+		}
+	}
+}
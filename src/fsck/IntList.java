@@ -0,0 +1,70 @@
+package fsck;
+
+import java.util.Arrays;
+
+/*
+ * Class Name: IntList
+ * Description: Growable list of primitive ints which is meant to be cleared and reused, so that lists of block numbers
+ *              can be collected without boxing and without allocating a new array for every block.
+ */
+public class IntList {
+
+	//Array holding the values, only the first count entries are in use
+	private int[] values;
+	private int count = 0;
+
+	public IntList()
+	{
+		this(16);
+	}
+
+	public IntList(int capacity)
+	{
+		values = new int[Math.max(capacity, 1)];
+	}
+
+	public void add(int value)
+	{
+		if (count == values.length)
+		{
+			values = Arrays.copyOf(values, count * 2);
+		}
+		values[count++] = value;
+	}
+
+	public int get(int position)
+	{
+		return values[position];
+	}
+
+	public void set(int position, int value)
+	{
+		values[position] = value;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	/*
+	 * Method to remove and return the last value, the list is used as a stack
+	 */
+	public int removeLast()
+	{
+		return values[--count];
+	}
+
+	/*
+	 * Method to empty the list, the backing array is kept for reuse
+	 */
+	public void clear()
+	{
+		count = 0;
+	}
+
+	public int[] toArray()
+	{
+		return Arrays.copyOf(values, count);
+	}
+}
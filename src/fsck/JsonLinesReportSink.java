@@ -0,0 +1,276 @@
+package fsck;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Class Name: JsonLinesReportSink
+ * Description: Machine readable report, one JSON object per line, for the tools which collect the results of many runs.
+ *              Record types:
+ *              {"type":"finding","check":"free-list","block":29,"expected":"listed free","actual":"not listed","repaired":true,"message":"..."}
+ *              {"type":"info","message":"..."}
+ *              {"type":"failure","exception":"java.io.IOException","message":"..."}
+ *              {"type":"summary","wallMillis":12.5,"findings":3,"repaired":2,"failures":0,"blocksRead":102,"bytesRead":9344,
+ *               "checks":[{"check":"free-list","millis":1.25,"findings":2}, ...]}
+ *              A finding is written once it is known whether its repair ran, the messages printed by the repair are held back until then
+ *              and follow it. A finding whose repair failed is written with repaired false, followed by the failure.
+ *              The summary is the last record of a run.
+ *              When the sink reports on one image of a batch, every record also carries the image, e.g. {"type":"info","image":"img1",...}
+ */
+public class JsonLinesReportSink implements ReportSink {
+
+	//Size of the output buffer in characters
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	//Variable to store the buffered writer the records are written to
+	private final Writer out;
+	//Variable to store the directory of the image reported on, null outside of a batch
+	private final String image;
+	//Variable to store the time at which the sink was created, the start of the run
+	private final long startNanos = System.nanoTime();
+	//Finding reported but not written yet, waiting for its repair
+	private Finding pending;
+	//Records reported while the finding is pending, written after it
+	private final List<StringBuilder> heldBack = new ArrayList<StringBuilder>();
+	//Time in nanoseconds and number of findings of each check, in the order in which the checks finished first
+	private final Map<String, long[]> checks = new LinkedHashMap<String, long[]>();
+	//Counters for the summary
+	private long findings = 0;
+	private long repairs = 0;
+	private long failures = 0;
+
+	public JsonLinesReportSink(OutputStream out)
+	{
+		this(out, null);
+	}
+
+	/*
+	 * Constructor for the sink of one image of a batch
+	 * Accepts the stream to write to and the directory of the image, added to every record
+	 */
+	public JsonLinesReportSink(OutputStream out, String image)
+	{
+		this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+		this.image = image;
+	}
+
+	public void error(Finding finding)
+	{
+		flushPending(false);
+		pending = finding;
+		findings++;
+	}
+
+	public void repaired()
+	{
+		if (pending != null)
+		{
+			repairs++;
+		}
+		flushPending(true);
+	}
+
+	public void info(String message)
+	{
+		StringBuilder record = new StringBuilder(64 + message.length());
+		startRecord(record, "info");
+		record.append("\"message\":");
+		appendString(record, message);
+		record.append('}');
+		if (pending != null)
+		{
+			heldBack.add(record);
+		}
+		else
+		{
+			write(record);
+		}
+	}
+
+	public void failure(Throwable failure)
+	{
+		flushPending(false);
+		failures++;
+		StringBuilder record = new StringBuilder(128);
+		startRecord(record, "failure");
+		record.append("\"exception\":");
+		appendString(record, failure.getClass().getName());
+		record.append(",\"message\":");
+		appendString(record, failure.getMessage());
+		write(record.append('}'));
+	}
+
+	public void checkFinished(String check, long nanos, int findings)
+	{
+		long[] totals = checks.get(check);
+		if (totals == null)
+		{
+			totals = new long[2];
+			checks.put(check, totals);
+		}
+		totals[0] += nanos;
+		totals[1] += findings;
+	}
+
+	public void summary(long blocksRead, long bytesRead)
+	{
+		flushPending(false);
+		StringBuilder record = new StringBuilder(256);
+		startRecord(record, "summary");
+		record.append("\"wallMillis\":").append(millis(System.nanoTime() - startNanos));
+		record.append(",\"findings\":").append(findings);
+		record.append(",\"repaired\":").append(repairs);
+		record.append(",\"failures\":").append(failures);
+		record.append(",\"blocksRead\":").append(blocksRead);
+		record.append(",\"bytesRead\":").append(bytesRead);
+		record.append(",\"checks\":[");
+		boolean first = true;
+		for (Map.Entry<String, long[]> check : checks.entrySet())
+		{
+			if (!first)
+			{
+				record.append(',');
+			}
+			first = false;
+			record.append("{\"check\":");
+			appendString(record, check.getKey());
+			record.append(",\"millis\":").append(millis(check.getValue()[0]));
+			record.append(",\"findings\":").append(check.getValue()[1]).append('}');
+		}
+		write(record.append("]}"));
+	}
+
+	public void close()
+	{
+		flushPending(false);
+		try
+		{
+			out.flush();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Unable to write the report", e);
+		}
+	}
+
+	/*
+	 * Method to write the pending finding, if any
+	 * Accepts whether the repair of the finding ran
+	 */
+	private void flushPending(boolean repaired)
+	{
+		if (pending == null)
+		{
+			return;
+		}
+		Finding finding = pending;
+		pending = null;
+		StringBuilder record = new StringBuilder(192 + finding.message.length());
+		startRecord(record, "finding");
+		record.append("\"check\":");
+		appendString(record, finding.check);
+		record.append(",\"block\":").append(finding.block);
+		record.append(",\"expected\":");
+		appendString(record, finding.expected);
+		record.append(",\"actual\":");
+		appendString(record, finding.actual);
+		record.append(",\"repaired\":").append(repaired);
+		record.append(",\"message\":");
+		appendString(record, finding.message);
+		write(record.append('}'));
+		for (StringBuilder held : heldBack)
+		{
+			write(held);
+		}
+		heldBack.clear();
+	}
+
+	/*
+	 * Method to start a record of the given type, with the image if there is one, ready for the next field
+	 */
+	private void startRecord(StringBuilder record, String type)
+	{
+		record.append("{\"type\":");
+		appendString(record, type);
+		if (image != null)
+		{
+			record.append(",\"image\":");
+			appendString(record, image);
+		}
+		record.append(',');
+	}
+
+	private void write(StringBuilder record)
+	{
+		try
+		{
+			out.append(record).append('\n');
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException("Unable to write the report", e);
+		}
+	}
+
+	/*
+	 * Method to format a time in nanoseconds as milliseconds with three decimals
+	 */
+	private static String millis(long nanos)
+	{
+		return String.format("%d.%03d", nanos / 1000000, nanos / 1000 % 1000);
+	}
+
+	/*
+	 * Method to append a string as a JSON string literal, null as the JSON null
+	 */
+	private static void appendString(StringBuilder record, String value)
+	{
+		if (value == null)
+		{
+			record.append("null");
+			return;
+		}
+		record.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+			case '"':
+				record.append("\\\"");
+				break;
+			case '\\':
+				record.append("\\\\");
+				break;
+			case '\n':
+				record.append("\\n");
+				break;
+			case '\r':
+				record.append("\\r");
+				break;
+			case '\t':
+				record.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+				{
+					record.append(String.format("\\u%04x", (int) c));
+				}
+				else
+				{
+					record.append(c);
+				}
+			}
+		}
+		record.append('"');
+	}
+}
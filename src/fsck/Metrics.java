@@ -0,0 +1,267 @@
+package fsck;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Class Name: Metrics
+ * Description: Counters and timers of the hot paths of a run - the time of the block reads and the size of the blocks read, as
+ *              histograms, the time spent tokenizing the blocks, the time of each check and the number of repairs.
+ *              The metrics are off unless enable is called before the run starts. When they are off every method returns after
+ *              testing a static flag and no clock is read, so the instrumented paths cost next to nothing.
+ *              The block reads and the checks are also reported as JFR events (category csefsck) once startRecording is called.
+ *              The JFR classes are only loaded then, loading them costs more than a small run.
+ *              The counters are global, in a batch the table covers all the images checked.
+ */
+public final class Metrics {
+
+	//Number of buckets of the histograms, bucket k counts the values v with 2^(k-1) <= v < 2^k
+	private static final int BUCKETS = 64;
+
+	//Flag to indicate that the metrics are recorded, only changed before the threads of the run are started
+	private static boolean enabled = false;
+	//Flag to indicate that the JFR events are recorded, set by startRecording
+	private static boolean recording = false;
+
+	//Histogram of the time of the block reads in nanoseconds
+	private static final AtomicLongArray readTimes = new AtomicLongArray(BUCKETS);
+	//Histogram of the size of the blocks read in bytes
+	private static final AtomicLongArray readSizes = new AtomicLongArray(BUCKETS);
+	//Number of blocks and bytes read from the disk and total time of the reads in nanoseconds
+	private static final LongAdder blocksRead = new LongAdder();
+	private static final LongAdder bytesRead = new LongAdder();
+	private static final LongAdder readNanos = new LongAdder();
+	//Number of blocks served by the block cache and of blocks the cache had to read, a failed read included
+	private static final LongAdder cacheHits = new LongAdder();
+	private static final LongAdder cacheMisses = new LongAdder();
+	//Number of blocks and bytes rewritten by the repairs
+	private static final LongAdder blocksWritten = new LongAdder();
+	private static final LongAdder bytesWritten = new LongAdder();
+	//Number of blocks tokenized and the time spent tokenizing them in nanoseconds
+	private static final LongAdder blocksParsed = new LongAdder();
+	private static final LongAdder parseNanos = new LongAdder();
+	//Number of repairs run for the findings
+	private static final LongAdder repairs = new LongAdder();
+	//Time in nanoseconds of each check, added up over the calls
+	private static final Map<String, LongAdder> checkNanos = new ConcurrentHashMap<String, LongAdder>();
+
+	private Metrics()
+	{
+	}
+
+	/*
+	 * Method to switch the metrics on, must be called before the run starts
+	 */
+	public static void enable()
+	{
+		enabled = true;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/*
+	 * Method to start a flight recording of the csefsck events, written to a file when stopRecording is called
+	 * Accepts the path of the recording file
+	 */
+	public static void startRecording(Path file) throws IOException
+	{
+		FlightEvents.startRecording(file);
+		recording = true;
+	}
+
+	/*
+	 * Method to stop the flight recording started by startRecording, if any, and write it to its file
+	 */
+	public static void stopRecording()
+	{
+		if (recording)
+		{
+			recording = false;
+			FlightEvents.stopRecording();
+		}
+	}
+
+	/*
+	 * Method to read the clock at the start of a timed section
+	 * Returns the time in nanoseconds, 0 when the metrics and the events are off
+	 */
+	public static long start()
+	{
+		return enabled || recording ? System.nanoTime() : 0;
+	}
+
+	/*
+	 * Method to record a block read from the disk
+	 * Accepts the block number, the size of the block and the time returned by start before the read
+	 */
+	public static void blockRead(int block, int bytes, long start)
+	{
+		if (!enabled && !recording)
+		{
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		if (recording)
+		{
+			FlightEvents.blockRead(block, bytes, nanos);
+		}
+		if (!enabled)
+		{
+			return;
+		}
+		blocksRead.increment();
+		bytesRead.add(bytes);
+		readNanos.add(nanos);
+		readTimes.incrementAndGet(bucket(nanos));
+		readSizes.incrementAndGet(bucket(bytes));
+	}
+
+	/*
+	 * Method to record a block served by the block cache
+	 */
+	public static void cacheHit()
+	{
+		if (enabled)
+		{
+			cacheHits.increment();
+		}
+	}
+
+	/*
+	 * Method to record a block the block cache did not hold and read from the disk
+	 */
+	public static void cacheMiss()
+	{
+		if (enabled)
+		{
+			cacheMisses.increment();
+		}
+	}
+
+	/*
+	 * Method to record the blocks rewritten by a commit of the repair journal
+	 */
+	public static void written(int blocks, long bytes)
+	{
+		if (enabled)
+		{
+			blocksWritten.add(blocks);
+			bytesWritten.add(bytes);
+		}
+	}
+
+	/*
+	 * Method to record the tokenizing of a block
+	 * Accepts the time returned by start before the block was tokenized
+	 */
+	public static void parsed(long start)
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		parseNanos.add(System.nanoTime() - start);
+		blocksParsed.increment();
+	}
+
+	/*
+	 * Method to record a repair run for a finding
+	 */
+	public static void repaired()
+	{
+		if (enabled)
+		{
+			repairs.increment();
+		}
+	}
+
+	/*
+	 * Method to record the time of a check
+	 * Accepts the id of the check, the time in nanoseconds and the number of findings
+	 */
+	public static void checkFinished(String check, long nanos, int findings)
+	{
+		if (recording)
+		{
+			FlightEvents.check(check, nanos, findings);
+		}
+		if (enabled)
+		{
+			checkNanos.computeIfAbsent(check, key -> new LongAdder()).add(nanos);
+		}
+	}
+
+	/*
+	 * Method to print the end of run table of the metrics
+	 * Accepts the stream to print to
+	 */
+	public static void printTable(PrintStream out)
+	{
+		out.println("Metrics of the run");
+		row(out, "Blocks read", Long.toString(blocksRead.sum()));
+		row(out, "Bytes read", Long.toString(bytesRead.sum()));
+		row(out, "Block read time (ms)", millis(readNanos.sum()));
+		row(out, "Cache hits", Long.toString(cacheHits.sum()));
+		row(out, "Cache misses", Long.toString(cacheMisses.sum()));
+		row(out, "Blocks parsed", Long.toString(blocksParsed.sum()));
+		row(out, "Parse time (ms)", millis(parseNanos.sum()));
+		row(out, "Repairs issued", Long.toString(repairs.sum()));
+		row(out, "Blocks written", Long.toString(blocksWritten.sum()));
+		row(out, "Bytes written", Long.toString(bytesWritten.sum()));
+
+		out.println();
+		row(out, "Check", "Time (ms)");
+		for (Map.Entry<String, LongAdder> check : new TreeMap<String, LongAdder>(checkNanos).entrySet())
+		{
+			row(out, check.getKey(), millis(check.getValue().sum()));
+		}
+
+		out.println();
+		row(out, "Block read time", "Reads");
+		histogram(out, readTimes, " ns");
+		out.println();
+		row(out, "Block size", "Reads");
+		histogram(out, readSizes, " B");
+	}
+
+	/*
+	 * Method to print the non empty buckets of a histogram, each as the upper bound of the bucket and its count
+	 */
+	private static void histogram(PrintStream out, AtomicLongArray buckets, String unit)
+	{
+		for (int k = 0; k < BUCKETS; k++)
+		{
+			if (buckets.get(k) > 0)
+			{
+				row(out, "< " + (k < 63 ? Long.toString(1L << k) : "2^63") + unit, Long.toString(buckets.get(k)));
+			}
+		}
+	}
+
+	private static void row(PrintStream out, String name, String value)
+	{
+		out.println(String.format("  %-28s %14s", name, value));
+	}
+
+	private static String millis(long nanos)
+	{
+		return String.format("%d.%03d", nanos / 1000000, nanos / 1000 % 1000);
+	}
+
+	/*
+	 * Method to get the histogram bucket of a value, 0 for the values below 1
+	 */
+	private static int bucket(long value)
+	{
+		return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+	}
+}
@@ -0,0 +1,374 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/*
+ * Class Name: OrphanSweep
+ * Description: Sweep of the blocks which are neither reached from the root nor listed free, to find the inodes which were cut off the tree
+ *              before the free block list check releases them. The blocks are swept in ranges of block numbers on a fork/join pool, in
+ *              ascending order within a range, so the sweep costs at most one sequential read of the image and nothing on a consistent one.
+ *              A block is classified from its first bytes - an inode starts with { (or is a binary record), an index block with a digit,
+ *              anything else is data. Only the inodes are tokenized, for the entries of a directory and the location of a file.
+ *              An orphan is a swept inode which is not named by a swept directory, it is the root of an orphaned subtree - the swept inodes
+ *              below it and the index and data blocks of its files. Inodes only named within a cycle of swept directories are orphans too.
+ *              The blocks of the subtrees are kept, the swept data and index blocks no orphan file points to are left to be released.
+ */
+public class OrphanSweep {
+
+	//Kinds of the swept blocks, NOT_SWEPT for the other blocks
+	public static final byte NOT_SWEPT = 0;
+	public static final byte DATA = '-';
+	public static final byte INDEX = 'i';
+	public static final byte DIRECTORY = 'd';
+	public static final byte FILE = 'f';
+
+	//Kinds of the links of the swept inodes - entry other than . and .., .. entry, location of a file, index block of a file
+	private static final int LINK_ENTRY = 0;
+	private static final int LINK_PARENT = 1;
+	private static final int LINK_LOCATION = 2;
+	private static final int LINK_INDEX = 3;
+
+	//Number of block numbers swept by a task
+	private static final int RANGE = 1024;
+
+	//Variable to store the store from which the blocks are read
+	private final BlockStore blockStore;
+	//Variable to store the maximum number of blocks
+	private final int maxBlocks;
+	//Variable to store the kind of every block number
+	private final byte[] kinds;
+	//Links of the swept inodes as (inode, kind of link, block) triples, in ascending order of the inode
+	private final IntList links = new IntList();
+
+	//Orphans in ascending order, the number of blocks of the subtree of each and the blocks of all the subtrees
+	private final IntList orphans = new IntList();
+	private final IntList subtreeSizes = new IntList();
+	private final BitSet kept = new BitSet();
+
+	public OrphanSweep(BlockStore blockStore, int maxBlocks)
+	{
+		this.blockStore = blockStore;
+		this.maxBlocks = maxBlocks;
+		this.kinds = new byte[Math.max(maxBlocks, 0)];
+	}
+
+	/*
+	 * Method to sweep the given blocks on the given number of threads and find the orphans among them
+	 * Accepts the bitmap of the blocks to sweep, those reached by no link and not listed free
+	 */
+	public void sweep(BitSet blocks, int threads)
+	{
+		int rangeCount = (maxBlocks + RANGE - 1) / RANGE;
+		IntList[] rangeLinks = new IntList[rangeCount];
+		if (threads <= 1 || blocks.cardinality() <= RANGE)
+		{
+			for (int r = 0; r < rangeCount; r++)
+			{
+				rangeLinks[r] = sweepRange(blocks, r);
+			}
+		}
+		else
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				pool.submit(() -> IntStream.range(0, rangeCount).parallel().forEach(r -> rangeLinks[r] = sweepRange(blocks, r))).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while sweeping the blocks", e);
+			}
+			catch (ExecutionException e)
+			{
+				throw new IllegalStateException(e.getCause());
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+		for (IntList range : rangeLinks)
+		{
+			for (int k = 0; range != null && k < range.size(); k++)
+			{
+				links.add(range.get(k));
+			}
+		}
+		findOrphans();
+	}
+
+	/*
+	 * Method to classify the swept blocks of a range of block numbers
+	 * Accepts the bitmap of the blocks to sweep and the position of the range, returns the links of the inodes of the range, or null
+	 */
+	private IntList sweepRange(BitSet blocks, int r)
+	{
+		int end = Math.min((r + 1) * RANGE, maxBlocks);
+		IntList rangeLinks = null;
+		for (int b = blocks.nextSetBit(r * RANGE); b >= 0 && b < end; b = blocks.nextSetBit(b + 1))
+		{
+			ByteBuffer block;
+			try
+			{
+				block = blockStore.readBlock(b);
+			}
+			catch (IOException e)
+			{
+				//A block which cannot be read holds nothing to keep, the free block list check releases it
+				kinds[b] = DATA;
+				continue;
+			}
+			kinds[b] = classify(block);
+			if (kinds[b] == INDEX || kinds[b] == DATA)
+			{
+				continue;
+			}
+			if (rangeLinks == null)
+			{
+				rangeLinks = new IntList();
+			}
+			final int inode = b;
+			final IntList inodeLinks = rangeLinks;
+			InodeRecord record = new InodeRecord() {
+				@Override
+				public void entry(byte type, ByteBuffer text, int nameStart, int nameEnd, int child)
+				{
+					boolean parent = BlockTokenizer.keyEquals(text, nameStart, nameEnd, "..");
+					if (parent || !BlockTokenizer.keyEquals(text, nameStart, nameEnd, "."))
+					{
+						inodeLinks.add(inode);
+						inodeLinks.add(parent ? LINK_PARENT : LINK_ENTRY);
+						inodeLinks.add(child);
+					}
+				}
+			};
+			int linksBefore = rangeLinks.size();
+			record.parse(block);
+			if (rangeLinks.size() == linksBefore && record.hasLocation)
+			{
+				kinds[b] = FILE;
+				rangeLinks.add(inode);
+				rangeLinks.add(record.indirect != 0 ? LINK_INDEX : LINK_LOCATION);
+				rangeLinks.add((int) Math.min(record.location, Integer.MAX_VALUE));
+			}
+			else if (rangeLinks.size() == linksBefore && !record.hasLinkcount)
+			{
+				kinds[b] = DATA;
+			}
+		}
+		return rangeLinks;
+	}
+
+	/*
+	 * Method to classify a block from its first bytes, an inode is reported as a directory until its links are read
+	 */
+	private static byte classify(ByteBuffer block)
+	{
+		if (BinaryBlock.isBinary(block))
+		{
+			return BinaryBlock.isRecord(block) ? DIRECTORY : INDEX;
+		}
+		for (int i = block.position(); i < block.limit(); i++)
+		{
+			byte c = block.get(i);
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+			{
+				return c == '{' ? DIRECTORY : c >= '0' && c <= '9' ? INDEX : DATA;
+			}
+		}
+		return DATA;
+	}
+
+	/*
+	 * Method to find the orphans, the swept inodes not named by the entries of a swept directory, and then those only named in a cycle
+	 */
+	private void findOrphans()
+	{
+		BitSet named = new BitSet();
+		for (int k = 0; k < links.size(); k += 3)
+		{
+			int child = links.get(k + 2);
+			if (links.get(k + 1) == LINK_ENTRY && child != links.get(k) && isInode(child))
+			{
+				named.set(child);
+			}
+		}
+		for (int pass = 0; pass < 2; pass++)
+		{
+			for (int b = 0; b < kinds.length; b++)
+			{
+				if (isInode(b) && !kept.get(b) && (pass == 1 || !named.get(b)))
+				{
+					orphans.add(b);
+					subtreeSizes.add(keepSubtree(b));
+				}
+			}
+		}
+		//The cycles were found after the other orphans, the orphans are reported in ascending order
+		sortOrphans();
+	}
+
+	/*
+	 * Method to keep the blocks of the subtree of an orphan, returns their number
+	 */
+	private int keepSubtree(int orphan)
+	{
+		int count = 0;
+		IntList pending = new IntList();
+		pending.add(orphan);
+		while (pending.size() > 0)
+		{
+			int b = pending.removeLast();
+			if (kept.get(b))
+			{
+				continue;
+			}
+			kept.set(b);
+			count++;
+			for (int k = firstLink(b); k < links.size() && links.get(k) == b; k += 3)
+			{
+				int kind = links.get(k + 1);
+				int child = links.get(k + 2);
+				if (kind == LINK_PARENT || !isSwept(child) || kept.get(child))
+				{
+					continue;
+				}
+				pending.add(child);
+				if (kind == LINK_INDEX)
+				{
+					count += keepIndexEntries(child);
+				}
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Method to keep the swept blocks listed in the index block of an orphan file, returns their number
+	 */
+	private int keepIndexEntries(int index)
+	{
+		IntList blockNumbers = new IntList();
+		try
+		{
+			BlockTokenizer.parseBlockList(blockStore.readBlock(index), blockNumbers);
+		}
+		catch (IOException e)
+		{
+			return 0;
+		}
+		int count = 0;
+		for (int k = 0; k < blockNumbers.size(); k++)
+		{
+			int b = blockNumbers.get(k);
+			if (isSwept(b) && !kept.get(b) && b != index)
+			{
+				kept.set(b);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Method to get the position of the first link of an inode, or the position after the links if it has none
+	 */
+	private int firstLink(int inode)
+	{
+		int low = 0;
+		int high = links.size() / 3;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (links.get(middle * 3) < inode)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low * 3;
+	}
+
+	private void sortOrphans()
+	{
+		for (int i = 1; i < orphans.size(); i++)
+		{
+			int orphan = orphans.get(i);
+			int size = subtreeSizes.get(i);
+			int j = i - 1;
+			for (; j >= 0 && orphans.get(j) > orphan; j--)
+			{
+				orphans.set(j + 1, orphans.get(j));
+				subtreeSizes.set(j + 1, subtreeSizes.get(j));
+			}
+			orphans.set(j + 1, orphan);
+			subtreeSizes.set(j + 1, size);
+		}
+	}
+
+	private boolean isSwept(int block)
+	{
+		return block >= 0 && block < kinds.length && kinds[block] != NOT_SWEPT;
+	}
+
+	private boolean isInode(int block)
+	{
+		return isSwept(block) && (kinds[block] == DIRECTORY || kinds[block] == FILE);
+	}
+
+	/*
+	 * Method to get the kind of a block, NOT_SWEPT if it was not swept
+	 */
+	public byte kind(int block)
+	{
+		return block >= 0 && block < kinds.length ? kinds[block] : NOT_SWEPT;
+	}
+
+	/*
+	 * Method to get the orphans, in ascending order
+	 */
+	public IntList getOrphans()
+	{
+		return orphans;
+	}
+
+	/*
+	 * Method to get the number of blocks of the subtree of the orphan at a position of getOrphans, the orphan included
+	 */
+	public int getSubtreeSize(int position)
+	{
+		return subtreeSizes.get(position);
+	}
+
+	/*
+	 * Method to get the blocks of all the orphaned subtrees, which are not to be released
+	 */
+	public BitSet getKept()
+	{
+		return kept;
+	}
+
+	/*
+	 * Method to get the .. entry of a swept directory, -1 if it has none
+	 */
+	public int getParentEntry(int directory)
+	{
+		for (int k = firstLink(directory); k < links.size() && links.get(k) == directory; k += 3)
+		{
+			if (links.get(k + 1) == LINK_PARENT)
+			{
+				return links.get(k + 2);
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,390 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Class Name: PackedImage
+ * Description: File system image packed into a single file, fusedata.pack in the image directory, instead of a fusedata.N file per block.
+ *              The file starts with a header - magic, version, block size, number of blocks - followed by the block index, the offset
+ *              and length of every block, a length of -1 for a block the image does not have. The header is padded to a multiple of the
+ *              block size and block N is stored in the slot of blockSize bytes at header size + N * blockSize. A block larger than a slot
+ *              is appended after the last slot, the index points to it.
+ *              All the blocks are read with positional reads of one FileChannel, which any number of threads can share, instead of an open,
+ *              a stat and a close of a file per block. A rewritten block which fits in its slot is written in place, any other is appended
+ *              and the space it used is only given back by packing the image again. The block is written before its index entry and neither
+ *              write is atomic, so a crash in between may leave a half written slot, or a shorter block followed by the stale end of the old
+ *              one. The pack does not recover from that by itself - the repairs write the blocks through the RepairJournal, whose replay on
+ *              the next start writes every block of the journal again, content and index entry.
+ *              Reads share a read lock and a write takes the write lock, so a block is never read while it is being written.
+ *              An image directory holding fusedata.0 is read block per file even when it also holds a pack.
+ *              Usage: java -cp csefsck.jar fsck.PackedImage pack|unpack SOURCE TARGET, see main
+ */
+public class PackedImage {
+
+	//Magic number at the start of the pack, "FSP1"
+	private static final int MAGIC = 0x46535031;
+	private static final int VERSION = 1;
+	//Size of the fixed part of the header and of an index entry in bytes
+	private static final int HEADER_FIELDS = 16;
+	private static final int INDEX_ENTRY = 12;
+
+	//Variable to store the path of the pack
+	private final Path path;
+	//Channel through which all the blocks are read and written
+	private final FileChannel channel;
+	//Variable to store the size of a slot
+	private final int blockSize;
+	//Offset and length of every block, a length of -1 for a block which is not in the image
+	private final long[] offsets;
+	private final int[] lengths;
+	//Lock shared by the reads of the blocks and held alone by a write, over the index and the content of the block
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private PackedImage(Path path, FileChannel channel, int blockSize, long[] offsets, int[] lengths)
+	{
+		this.path = path;
+		this.channel = channel;
+		this.blockSize = blockSize;
+		this.offsets = offsets;
+		this.lengths = lengths;
+	}
+
+	/*
+	 * Method to get the path of the pack of an image directory
+	 */
+	public static Path packPath(Path imageDirectory, String basicFileName)
+	{
+		return Paths.get(imageDirectory.toString(), basicFileName + ".pack");
+	}
+
+	/*
+	 * Method to tell whether an image directory holds a packed image rather than a file per block
+	 */
+	public static boolean isPacked(Path imageDirectory, String basicFileName)
+	{
+		return Files.isRegularFile(packPath(imageDirectory, basicFileName))
+				&& !Files.exists(Paths.get(imageDirectory.toString(), basicFileName + ".0"));
+	}
+
+	/*
+	 * Method to open a pack for reading and writing
+	 * Accepts the path of the pack, reads its header and block index. Throws an IOException for a file which is not a pack
+	 */
+	public static PackedImage open(Path path) throws IOException
+	{
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			ByteBuffer header = ByteBuffer.allocate(HEADER_FIELDS);
+			readFully(channel, header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_FIELDS || header.getInt() != MAGIC || header.getInt() != VERSION)
+			{
+				throw new IOException(path + " is not a packed file system image");
+			}
+			int blockSize = header.getInt();
+			int blockCount = header.getInt();
+			if (blockSize <= 0 || blockCount < 0 || HEADER_FIELDS + (long) INDEX_ENTRY * blockCount > channel.size())
+			{
+				throw new IOException(path + " has a damaged header");
+			}
+
+			ByteBuffer index = ByteBuffer.allocate(INDEX_ENTRY * blockCount);
+			readFully(channel, index, HEADER_FIELDS);
+			index.flip();
+			long[] offsets = new long[blockCount];
+			int[] lengths = new int[blockCount];
+			for (int b = 0; b < blockCount; b++)
+			{
+				offsets[b] = index.getLong();
+				lengths[b] = index.getInt();
+			}
+			return new PackedImage(path, channel, blockSize, offsets, lengths);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * Method to read a block
+	 * Accepts the block number, returns a read only heap buffer sized to the block. Throws a NoSuchFileException for a block which
+	 * is not in the image, as a missing block file does
+	 */
+	public ByteBuffer read(int blockNumber) throws IOException
+	{
+		ByteBuffer block;
+		lock.readLock().lock();
+		try
+		{
+			if (blockNumber < 0 || blockNumber >= lengths.length || lengths[blockNumber] < 0)
+			{
+				throw new NoSuchFileException(path.toString(), null, "block " + blockNumber + " is not in the image");
+			}
+			block = ByteBuffer.allocate(lengths[blockNumber]);
+			readFully(channel, block, offsets[blockNumber]);
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		if (block.hasRemaining())
+		{
+			throw new IOException(path + " is truncated, block " + blockNumber + " is incomplete");
+		}
+		block.flip();
+		return block.asReadOnlyBuffer();
+	}
+
+	/*
+	 * Method to replace the content of a block, in its slot if it fits else after the end of the pack
+	 * Accepts the block number, which must have an index entry, and the new content. The content is not forced to the disk
+	 */
+	public void write(int blockNumber, ByteBuffer content) throws IOException
+	{
+		if (blockNumber < 0 || blockNumber >= lengths.length)
+		{
+			throw new IOException("Block " + blockNumber + " is outside of the packed image " + path);
+		}
+		lock.writeLock().lock();
+		try
+		{
+			int length = content.remaining();
+			long offset = length <= blockSize ? slot(blockNumber) : Math.max(channel.size(), slot(lengths.length));
+			writeFully(channel, content, offset);
+
+			ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+			entry.putLong(offset).putInt(length).flip();
+			writeFully(channel, entry, HEADER_FIELDS + (long) INDEX_ENTRY * blockNumber);
+			offsets[blockNumber] = offset;
+			lengths[blockNumber] = length;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Method to force the written blocks and index entries to the disk
+	 */
+	public void force() throws IOException
+	{
+		channel.force(true);
+	}
+
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/*
+	 * Method to get the offset of the slot of a block
+	 */
+	private long slot(int blockNumber)
+	{
+		return headerSize(lengths.length, blockSize) + (long) blockSize * blockNumber;
+	}
+
+	/*
+	 * Method to get the size of the header and of the index, padded to a multiple of the block size
+	 */
+	private static long headerSize(int blockCount, int blockSize)
+	{
+		long size = HEADER_FIELDS + (long) INDEX_ENTRY * blockCount;
+		return (size + blockSize - 1) / blockSize * blockSize;
+	}
+
+	/*
+	 * Method to pack the block files of an image directory into a single file
+	 * Accepts the image directory, the block file name prefix, the size of a slot and the path of the pack, which is replaced atomically
+	 * The pack has an index entry for every block below the maxBlocks of the super block and for every block file above it
+	 * Returns the number of blocks packed
+	 */
+	public static int pack(Path imageDirectory, String basicFileName, int blockSize, Path target) throws IOException
+	{
+		int[] blocks = listBlocks(imageDirectory, basicFileName);
+		if (blocks.length == 0 || blocks[0] != 0)
+		{
+			throw new IOException(imageDirectory + " does not hold a file system image");
+		}
+		Superblock superblock = new Superblock().parse(ByteBuffer.wrap(Files.readAllBytes(blockFile(imageDirectory, basicFileName, 0))));
+		int blockCount = Math.max(superblock.maxBlocks, blocks[blocks.length - 1] + 1);
+
+		long[] offsets = new long[blockCount];
+		int[] lengths = new int[blockCount];
+		Arrays.fill(lengths, -1);
+		long overflow = headerSize(blockCount, blockSize) + (long) blockSize * blockCount;
+		Path temporary = Paths.get(target.toString() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			for (int b : blocks)
+			{
+				byte[] content = Files.readAllBytes(blockFile(imageDirectory, basicFileName, b));
+				long offset = headerSize(blockCount, blockSize) + (long) blockSize * b;
+				if (content.length > blockSize)
+				{
+					offset = overflow;
+					overflow += content.length;
+				}
+				writeFully(channel, ByteBuffer.wrap(content), offset);
+				offsets[b] = offset;
+				lengths[b] = content.length;
+			}
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_FIELDS + INDEX_ENTRY * blockCount);
+			header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putInt(blockCount);
+			for (int b = 0; b < blockCount; b++)
+			{
+				header.putLong(offsets[b]).putInt(lengths[b]);
+			}
+			header.flip();
+			writeFully(channel, header, 0);
+			channel.force(true);
+		}
+		Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		return blocks.length;
+	}
+
+	/*
+	 * Method to write the blocks of a pack back to a file per block
+	 * Accepts the path of the pack, the directory to write the block files to and the block file name prefix
+	 * Returns the number of blocks written
+	 */
+	public static int unpack(Path source, Path imageDirectory, String basicFileName) throws IOException
+	{
+		Files.createDirectories(imageDirectory);
+		PackedImage image = open(source);
+		try
+		{
+			int count = 0;
+			for (int b = 0; b < image.lengths.length; b++)
+			{
+				if (image.lengths[b] < 0)
+				{
+					continue;
+				}
+				ByteBuffer block = image.read(b);
+				byte[] content = new byte[block.remaining()];
+				block.get(content);
+				Files.write(blockFile(imageDirectory, basicFileName, b), content);
+				count++;
+			}
+			return count;
+		}
+		finally
+		{
+			image.close();
+		}
+	}
+
+	/*
+	 * Method to list the block numbers of the block files of an image directory in ascending order
+	 */
+	private static int[] listBlocks(Path imageDirectory, String basicFileName) throws IOException
+	{
+		IntList blocks = new IntList(1024);
+		String prefix = basicFileName + ".";
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(imageDirectory, prefix + "*"))
+		{
+			for (Path file : files)
+			{
+				String name = file.getFileName().toString();
+				int block = 0;
+				boolean number = name.length() > prefix.length() && name.length() - prefix.length() <= 9;
+				for (int i = prefix.length(); i < name.length() && number; i++)
+				{
+					char c = name.charAt(i);
+					number = c >= '0' && c <= '9';
+					block = block * 10 + (c - '0');
+				}
+				if (number)
+				{
+					blocks.add(block);
+				}
+			}
+		}
+		int[] sorted = new int[blocks.size()];
+		for (int i = 0; i < sorted.length; i++)
+		{
+			sorted[i] = blocks.get(i);
+		}
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static Path blockFile(Path imageDirectory, String basicFileName, int blockNumber)
+	{
+		return Paths.get(imageDirectory.toString(), basicFileName + "." + blockNumber);
+	}
+
+	/*
+	 * Method to read from a position until the buffer is full or the end of the file is reached
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			int read = channel.read(buffer, position);
+			if (read < 0)
+			{
+				return;
+			}
+			position += read;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/*
+	 * Converter between the two layouts, both take image directories
+	 * pack SOURCE TARGET      packs the block files of SOURCE into TARGET/fusedata.pack
+	 * unpack SOURCE TARGET    writes the blocks of SOURCE/fusedata.pack to a file per block in TARGET
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length != 3 || (!args[0].equals("pack") && !args[0].equals("unpack")))
+		{
+			System.out.println("Error: Usage: java fsck.PackedImage pack|unpack SOURCE TARGET");
+			return;
+		}
+		Path source = Paths.get(args[1]);
+		Path target = Paths.get(args[2]);
+		if (Files.exists(target.resolve("fusedata.0")) || Files.exists(packPath(target, "fusedata")))
+		{
+			System.out.println("Error: " + target + " already holds a file system image");
+			return;
+		}
+		if (args[0].equals("pack"))
+		{
+			Files.createDirectories(target);
+			int blocks = pack(source, "fusedata", 4096, packPath(target, "fusedata"));
+			System.out.println("INFO: " + blocks + " blocks of " + source + " packed into " + packPath(target, "fusedata"));
+		}
+		else
+		{
+			int blocks = unpack(packPath(source, "fusedata"), target, "fusedata");
+			System.out.println("INFO: " + blocks + " blocks of " + packPath(source, "fusedata") + " written to " + target);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package fsck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/*
+ * Class Name: RepairJournal
+ * Description: Write ahead journal of the block rewrites done by the repairs.
+ *              The repairs do not write the blocks themselves, they read the current content of a block through the journal, which sees
+ *              the rewrites planned so far, and record the new content of the block with write. commit then
+ *              a. appends every planned rewrite to the journal file in one sequential write and forces it and the image directory to the disk
+ *              b. replaces the blocks, each through a temporary file and an atomic move (BlockStore.writeBlock)
+ *              c. forces the rewritten blocks and the image directory, which holds the renames, and then deletes the journal file
+ *              If the program stops after a. the blocks are rewritten again from the journal by replay on the next start, if it stops
+ *              before a. is complete the journal is found torn (bad checksum) and discarded, no block having been touched.
+ *              Journal file format: magic, number of records, records of (block number, length, content), CRC32 of all the bytes before it.
+ */
+public class RepairJournal {
+
+	//Identifier at the start of a journal file, "FSJ1"
+	private static final int MAGIC = 0x46534A31;
+
+	//Variable to store the block store through which the blocks are read and replaced
+	private final BlockStore blockStore;
+	//Variable to store the path of the journal file
+	private final Path path;
+
+	//Planned rewrites by block number, a block rewritten twice is only written once with its last content
+	private final TreeMap<Integer, byte[]> planned = new TreeMap<Integer, byte[]>();
+
+	//Counters of the committed rewrites
+	private int blocksWritten = 0;
+	private long bytesWritten = 0;
+
+	public RepairJournal(BlockStore blockStore, Path path)
+	{
+		this.blockStore = blockStore;
+		this.path = path;
+	}
+
+	/*
+	 * Method to read a block as the repairs see it - the planned content if the block is to be rewritten, else the content on the disk
+	 * A binary encoded block is given as its text, the repairs only work on the text and write the block back as text
+	 * Accepts the block number, returns a read only buffer of the block
+	 */
+	public ByteBuffer read(int blockNumber) throws IOException
+	{
+		byte[] content = planned.get(blockNumber);
+		return content != null ? ByteBuffer.wrap(content).asReadOnlyBuffer() : BinaryBlock.toText(blockStore.readBlock(blockNumber));
+	}
+
+	/*
+	 * Method to read a block as text, the bytes are mapped one to one to characters so that writeText writes back the same bytes
+	 */
+	public String readText(int blockNumber) throws IOException
+	{
+		ByteBuffer block = read(blockNumber);
+		byte[] bytes = new byte[block.remaining()];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = block.get(block.position() + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/*
+	 * Method to plan the rewrite of a block with a new content
+	 */
+	public void write(int blockNumber, byte[] content)
+	{
+		planned.put(blockNumber, content);
+	}
+
+	public void writeText(int blockNumber, String text)
+	{
+		write(blockNumber, text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	public boolean isEmpty()
+	{
+		return planned.isEmpty();
+	}
+
+	/*
+	 * Method to write the planned rewrites to the journal and then to the blocks
+	 * Does not return any value, the blocks are rewritten and the plan is empty when it returns
+	 */
+	public void commit() throws IOException
+	{
+		if (planned.isEmpty())
+		{
+			return;
+		}
+
+		int size = 8;
+		for (byte[] content : planned.values())
+		{
+			size += 8 + content.length;
+		}
+		ByteBuffer journal = ByteBuffer.allocate(size + 8);
+		journal.putInt(MAGIC);
+		journal.putInt(planned.size());
+		for (Map.Entry<Integer, byte[]> rewrite : planned.entrySet())
+		{
+			journal.putInt(rewrite.getKey());
+			journal.putInt(rewrite.getValue().length);
+			journal.put(rewrite.getValue());
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(journal.array(), 0, size);
+		journal.putLong(checksum.getValue());
+		journal.flip();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (journal.hasRemaining())
+			{
+				channel.write(journal);
+			}
+			channel.force(true);
+		}
+		//The entry of the journal file in the image directory must be on the disk too before any block is replaced
+		forceDirectory(path);
+
+		apply(blockStore, planned);
+		long bytes = 0;
+		for (byte[] content : planned.values())
+		{
+			bytes += content.length;
+		}
+		bytesWritten += bytes;
+		blocksWritten += planned.size();
+		Metrics.written(planned.size(), bytes);
+		planned.clear();
+		//The renames of the rewritten blocks must be on the disk before the journal which would replay them is deleted
+		forceDirectory(path);
+		Files.delete(path);
+	}
+
+	public int getBlocksWritten()
+	{
+		return blocksWritten;
+	}
+
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/*
+	 * Method to finish the rewrites of a journal left behind by a run which stopped half way
+	 * Accepts the block store and the path of the journal file
+	 * Returns the number of blocks rewritten, 0 if there is no journal and -1 if the journal was torn and has been discarded
+	 */
+	public static int replay(BlockStore blockStore, Path path) throws IOException
+	{
+		if (!Files.exists(path))
+		{
+			return 0;
+		}
+
+		TreeMap<Integer, byte[]> rewrites = parse(ByteBuffer.wrap(Files.readAllBytes(path)));
+		if (rewrites == null)
+		{
+			Files.delete(path);
+			return -1;
+		}
+		apply(blockStore, rewrites);
+		forceDirectory(path);
+		Files.delete(path);
+		return rewrites.size();
+	}
+
+	/*
+	 * Method to replace the blocks and force them to the disk, the journal must be on the disk before
+	 */
+	private static void apply(BlockStore blockStore, TreeMap<Integer, byte[]> rewrites) throws IOException
+	{
+		for (Map.Entry<Integer, byte[]> rewrite : rewrites.entrySet())
+		{
+			blockStore.writeBlock(rewrite.getKey(), ByteBuffer.wrap(rewrite.getValue()));
+		}
+		for (int blockNumber : rewrites.keySet())
+		{
+			blockStore.force(blockNumber);
+		}
+	}
+
+	/*
+	 * Method to force the directory holding a file to the disk, so that the files created, renamed or deleted in it are durable
+	 * Accepts the path of the file. A platform on which a directory cannot be opened, e.g. Windows, has nothing to force
+	 */
+	private static void forceDirectory(Path path) throws IOException
+	{
+		Path directory = path.toAbsolutePath().getParent();
+		FileChannel channel;
+		try
+		{
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		}
+		catch (IOException e)
+		{
+			return;
+		}
+		try
+		{
+			channel.force(true);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/*
+	 * Method to read the records of a journal file
+	 * Returns the rewrites by block number, null if the file is not a complete journal
+	 */
+	private static TreeMap<Integer, byte[]> parse(ByteBuffer journal)
+	{
+		if (journal.remaining() < 16 || journal.getInt() != MAGIC)
+		{
+			return null;
+		}
+		int count = journal.getInt();
+		TreeMap<Integer, byte[]> rewrites = new TreeMap<Integer, byte[]>();
+		for (int i = 0; i < count; i++)
+		{
+			if (journal.remaining() < 8)
+			{
+				return null;
+			}
+			int blockNumber = journal.getInt();
+			int length = journal.getInt();
+			if (length < 0 || journal.remaining() < length + 8)
+			{
+				return null;
+			}
+			byte[] content = new byte[length];
+			journal.get(content);
+			rewrites.put(blockNumber, content);
+		}
+		if (journal.remaining() != 8)
+		{
+			return null;
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(journal.array(), 0, journal.position());
+		return checksum.getValue() == journal.getLong() ? rewrites : null;
+	}
+}
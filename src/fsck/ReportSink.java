@@ -0,0 +1,48 @@
+package fsck;
+
+/*
+ * Class Name: ReportSink
+ * Description: Destination of the report of a run - the findings of the checks, the informational messages of the repairs, the
+ *              unexpected failures and, at the end, the summary of the time spent in each check and of the blocks read.
+ *              Everything is reported from one thread at a time, in the order of the report. A sink buffers its output,
+ *              close must be called once the run is over, also when it stopped with an exception.
+ */
+public interface ReportSink {
+
+	/*
+	 * Method to report an inconsistency, called before the repair of the inconsistency if there is one
+	 */
+	void error(Finding finding);
+
+	/*
+	 * Method to report that the repair of the last inconsistency reported has been run
+	 */
+	void repaired();
+
+	/*
+	 * Method to report an informational message, without the "INFO: " prefix
+	 */
+	void info(String message);
+
+	/*
+	 * Method to report an unexpected exception, e.g. a block which could not be read or rewritten
+	 */
+	void failure(Throwable failure);
+
+	/*
+	 * Method to add the time spent in a check and the number of findings it reported to the summary
+	 * Can be called several times for the same check, the times and counts are added up
+	 */
+	void checkFinished(String check, long nanos, int findings);
+
+	/*
+	 * Method to report the summary of the run
+	 * Accepts the number of blocks and of bytes read from the disk by the whole run
+	 */
+	void summary(long blocksRead, long bytesRead);
+
+	/*
+	 * Method to write out everything buffered, does not return any value
+	 */
+	void close();
+}
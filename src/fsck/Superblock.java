@@ -0,0 +1,70 @@
+package fsck;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Class Name: Superblock
+ * Description: Primitive fields of the super block, filled by the BlockTokenizer.
+ *              Super Block format: {creationTime: 1429434844, mounted: 5, devId:20, freeStart:1, freeEnd:25, root:26, maxBlocks:10000}
+ */
+public class Superblock implements BlockTokenizer.Handler {
+
+	public long creationTime;
+	public int mounted;
+	public int devId;
+	public int freeStart;
+	public int freeEnd;
+	public int root;
+	public int maxBlocks;
+
+	//Flags to indicate which of the attributes were present in the block
+	public boolean hasCreationTime;
+	public boolean hasDevId;
+
+	/*
+	 * Method to reset the fields and fill them from the bytes of the super block
+	 */
+	public Superblock parse(ByteBuffer block)
+	{
+		creationTime = 0;
+		mounted = devId = freeStart = freeEnd = root = maxBlocks = 0;
+		hasCreationTime = hasDevId = false;
+		BlockTokenizer.tokenize(block, this);
+		return this;
+	}
+
+	@Override
+	public void attribute(ByteBuffer text, int keyStart, int keyEnd, long value)
+	{
+		if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "creationTime"))
+		{
+			creationTime = value;
+			hasCreationTime = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "mounted"))
+		{
+			mounted = (int) value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "devId"))
+		{
+			devId = (int) value;
+			hasDevId = true;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "freeStart"))
+		{
+			freeStart = (int) value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "freeEnd"))
+		{
+			freeEnd = (int) value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "root"))
+		{
+			root = (int) value;
+		}
+		else if (BlockTokenizer.keyEquals(text, keyStart, keyEnd, "maxBlocks"))
+		{
+			maxBlocks = (int) value;
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package fsck;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/*
+ * Class Name: TextReportSink
+ * Description: The human readable report, one "Error: " or "INFO: " line per finding or message, as printed by csefsck from the start.
+ *              The lines are written through a buffer instead of one system call each. The stack trace of a failure is printed to the
+ *              same stream, so that it reads in its place and ends up in the report of its image when the report is buffered by FsckBatch.
+ *              The text report has no summary, the timings are only part of the JSON lines report.
+ */
+public class TextReportSink implements ReportSink {
+
+	//Size of the output buffer in bytes
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	//Variable to store the buffered stream the report is printed to
+	private final PrintStream out;
+
+	public TextReportSink(OutputStream out)
+	{
+		this.out = new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false);
+	}
+
+	public void error(Finding finding)
+	{
+		out.println("Error: " + finding.message);
+	}
+
+	public void repaired()
+	{
+	}
+
+	public void info(String message)
+	{
+		out.println("INFO: " + message);
+	}
+
+	public void failure(Throwable failure)
+	{
+		failure.printStackTrace(out);
+	}
+
+	public void checkFinished(String check, long nanos, int findings)
+	{
+	}
+
+	public void summary(long blocksRead, long bytesRead)
+	{
+	}
+
+	public void close()
+	{
+		out.flush();
+	}
+}
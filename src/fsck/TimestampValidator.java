@@ -0,0 +1,69 @@
+package fsck;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/*
+ * Class Name: TimestampValidator
+ * Description: Future date time check of the times of the blocks - creationTime, atime, ctime and mtime - which are seconds since the epoch.
+ *              The current time is taken once when the validator is created, at the start of the run, so that every time of the image
+ *              is compared with the same instant and checking a time is the comparison of two longs, with no clock read and no object.
+ *              A time is in the future when it is later than now plus the clock skew tolerance, which allows for an image written on a
+ *              machine whose clock is slightly ahead.
+ *              The validator is immutable and can be shared by the threads of the checks, only the error messages format dates.
+ */
+public final class TimestampValidator {
+
+	//Format of the dates in the messages, in the time zone of the system
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+	//Variable to store the time of the run in seconds since the epoch
+	private final long now;
+	//Variable to store the latest time which is not in the future, now plus the tolerance
+	private final long latest;
+
+	/*
+	 * Constructor for the validator
+	 * Accepts the current time and the clock skew tolerance, both in seconds
+	 */
+	public TimestampValidator(long now, long skewSeconds)
+	{
+		this.now = now;
+		this.latest = now + Math.max(skewSeconds, 0);
+	}
+
+	/*
+	 * Method to create a validator taking the current time of the system clock
+	 * Accepts the clock skew tolerance in seconds
+	 */
+	public static TimestampValidator now(long skewSeconds)
+	{
+		return new TimestampValidator(System.currentTimeMillis() / 1000, skewSeconds);
+	}
+
+	/*
+	 * Method to tell whether a time is in the future
+	 * Accepts the time in seconds since the epoch
+	 */
+	public boolean isFuture(long seconds)
+	{
+		return seconds > latest;
+	}
+
+	/*
+	 * Method to get the time of the run in seconds since the epoch
+	 */
+	public long getNow()
+	{
+		return now;
+	}
+
+	/*
+	 * Method to format a time in seconds since the epoch as MM/dd/yyyy HH:mm:ss
+	 */
+	public static String format(long seconds)
+	{
+		return DATE_FORMAT.format(Instant.ofEpochSecond(seconds));
+	}
+}
@@ -0,0 +1,162 @@
+package fsck;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Class Name: VectorListParser
+ * Description: Parser of the comma separated block lists with the Vector API, used by BlockTokenizer.markBlockList when the JVM is
+ *              started with --add-modules jdk.incubator.vector. The block is scanned a vector of bytes at a time, the bytes are classified
+ *              as digits and separators by a few vector compares, and the digit runs are found in the bitmask of the digits with bit
+ *              operations, so the separators are skipped without looking at them one by one. Only the digits are read again to
+ *              convert them, and the block numbers go straight into the bitmap.
+ *              A vector holding any other byte, a number of more than 10 digits and the bytes after the last full vector are left to the
+ *              scalar BlockTokenizer.markList, from the start of the item being read, so the result is the same as the scalar one.
+ *              The class is only loaded when the incubator module is present.
+ */
+final class VectorListParser {
+
+	//Vector shape of the scan, at most 64 lanes so that the masks fit in a long
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.length() <= 64 ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_256;
+	private static final int LANES = SPECIES.length();
+	//Same shape as longs, and the shift of the 8 bit mask of each long to its place in the mask of the vector
+	private static final VectorSpecies<Long> LONG_SPECIES = VectorSpecies.of(long.class, SPECIES.vectorShape());
+	private static final LongVector MASK_SHIFTS = LongVector.zero(LONG_SPECIES).addIndex(8);
+	private static final ByteVector ZERO = ByteVector.zero(SPECIES);
+	//Largest number of digits converted here, longer numbers may overflow and are left to the scalar parser
+	private static final int MAX_DIGITS = 10;
+
+	//Little endian view of 8 bytes of an array as a long, for the conversion of the digits
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	//Copy of the block of each thread, the vectors are loaded from an array as the blocks are read only buffers
+	private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[4096]);
+
+	private VectorListParser()
+	{
+	}
+
+	/*
+	 * Method to mark the block numbers of a list in a bitmap, see BlockTokenizer.markBlockList
+	 */
+	static boolean mark(ByteBuffer text, BitSet blocks, int from, int to, IntList outside)
+	{
+		int start = text.position();
+		int length = text.remaining();
+		byte[] bytes = scratch.get();
+		if (bytes.length < length)
+		{
+			bytes = new byte[length];
+			scratch.set(bytes);
+		}
+		text.get(start, bytes, 0, length);
+
+		//Number carried over from the previous vector, its start and its digits so far
+		int runStart = -1;
+		int digits = 0;
+		long value = 0;
+		int i = 0;
+		for (; i + LANES <= length; i += LANES)
+		{
+			ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+			VectorMask<Byte> digit = v.compare(VectorOperators.GE, (byte) '0').and(v.compare(VectorOperators.LE, (byte) '9'));
+			VectorMask<Byte> separator = v.compare(VectorOperators.EQ, (byte) ',').or(v.compare(VectorOperators.EQ, (byte) ' '))
+					.or(v.compare(VectorOperators.EQ, (byte) '\t')).or(v.compare(VectorOperators.EQ, (byte) '\r'))
+					.or(v.compare(VectorOperators.EQ, (byte) '\n'));
+			if (!digit.or(separator).allTrue())
+			{
+				break;
+			}
+			long remaining = toBits(digit);
+
+			//Digits at the start of the vector continue the number of the previous vector
+			if (digits > 0)
+			{
+				int run = Math.min(Long.numberOfTrailingZeros(~remaining), LANES);
+				value = accumulate(bytes, i, run, value);
+				digits += run;
+				if (digits > MAX_DIGITS)
+				{
+					break;
+				}
+				if (run == LANES)
+				{
+					continue;
+				}
+				if (value > Integer.MAX_VALUE)
+				{
+					return false;
+				}
+				BlockTokenizer.mark((int) value, blocks, from, to, outside);
+				digits = 0;
+				remaining &= ~((1L << run) - 1);
+			}
+
+			//Every digit run of the vector, the last one may go on in the next vector
+			while (remaining != 0)
+			{
+				int first = Long.numberOfTrailingZeros(remaining);
+				int run = Long.numberOfTrailingZeros(~(remaining >>> first));
+				if (first + run >= LANES)
+				{
+					runStart = i + first;
+					digits = LANES - first;
+					value = accumulate(bytes, runStart, digits, 0);
+					break;
+				}
+				if (run > MAX_DIGITS)
+				{
+					return BlockTokenizer.markList(text, start + i + first, blocks, from, to, outside);
+				}
+				long number = accumulate(bytes, i + first, run, 0);
+				if (number > Integer.MAX_VALUE)
+				{
+					return false;
+				}
+				BlockTokenizer.mark((int) number, blocks, from, to, outside);
+				remaining &= ~(((1L << run) - 1) << first);
+			}
+		}
+		return BlockTokenizer.markList(text, start + (digits > 0 ? runStart : i), blocks, from, to, outside);
+	}
+
+	/*
+	 * Method to get a mask as a long with a bit per lane
+	 * VectorMask.toLong is not compiled to a vector instruction by this JDK, so the mask is made a vector of 0 and 1 bytes and each 8
+	 * bytes are gathered into 8 bits by a multiplication, as a long, then shifted to their place and or'ed together
+	 */
+	private static long toBits(VectorMask<Byte> mask)
+	{
+		return ZERO.blend((byte) 1, mask).reinterpretAsLongs().mul(0x0102040810204080L).lanewise(VectorOperators.LSHR, 56)
+				.lanewise(VectorOperators.LSHL, MASK_SHIFTS).reduceLanes(VectorOperators.OR);
+	}
+
+	/*
+	 * Method to add a run of digits to a number
+	 * A run of at most 8 digits is converted at once from the 8 bytes ending with it, SWAR style - the digits are combined pairwise into
+	 * 2, 4 and then 8 digit numbers by three multiplications. The bytes before the run are masked off, they read as leading zeros
+	 */
+	private static long accumulate(byte[] bytes, int from, int count, long value)
+	{
+		if (count <= 8 && count > 0 && from + count >= 8 && value == 0)
+		{
+			long chunk = (long) LONG.get(bytes, from + count - 8) & (-1L << ((8 - count) * 8)) & 0x0F0F0F0F0F0F0F0FL;
+			chunk = (chunk * 10 + (chunk >>> 8)) & 0x00FF00FF00FF00FFL;
+			chunk = (chunk * 100 + (chunk >>> 16)) & 0x0000FFFF0000FFFFL;
+			return (chunk * 10000 + (chunk >>> 32)) & 0xFFFFFFFFL;
+		}
+		for (int d = from; d < from + count; d++)
+		{
+			value = value * 10 + (bytes[d] - '0');
+		}
+		return value;
+	}
+}